@@ -5,6 +5,7 @@ import os
 import time
 import subprocess
 import shlex;
+import re
 import argparse
 import logging
 import tempfile
@@ -177,6 +178,13 @@ def submit_to_lsf(args_dict):
             cmd_output = subprocess.check_output(bsub_cmd_list).strip();
          
             if cmd_output: warn(cmd_output.decode('utf-8'));
+            if args_dict['printJobId']:
+                # Job <123> is submitted to queue <short>.
+                match = re.search(r'Job <(\d+)>', cmd_output.decode('utf-8'))
+                if not match:
+                    logging.error("Could not find job id in: %s" % cmd_output);
+                    return 1;
+                print(match.group(1));
         except subprocess.CalledProcessError as e:
             logging.error( "Execution: %s failed: %s" % (e.cmd, e.returncode) );
             return e.returncode; #Here we could propagate the error upstream
@@ -187,16 +195,22 @@ def submit_to_lsf(args_dict):
         return 0;
 
 
-def _get_jobs_with_prefix(job_prefix):
+def _get_job_states(job_prefix):
     """
-    :param job_prefix: Prefix or name of the job dependency. This could potentially be regex in the future, but for now we can maintain LSF compatibility
+    Lists the jobs of the current user with a single squeue or bjobs call.
+
+    :param job_prefix: Prefix (ending with '*') or name of the jobs
     :type: str
 
-    :return: A list of job ids currently in the system whose name match this prefix or job name
-    :rtype: list of str
+    :return: A list of (job id, job name, state) of the matching jobs currently in the system
+    :rtype: list of tuple of str
     """
 
-    cmd_line = "squeue -h -o %j,%A -u " + os.environ['USER'];
+    if get_scheduler() == 'slurm':
+        cmd_line = "squeue -h -o %j,%A,%T -u " + os.environ['USER'];
+    else:
+        # -a includes recently finished jobs with state DONE or EXIT
+        cmd_line = "bjobs -a -noheader -o 'job_name jobid stat delimiter=\",\"' -u " + os.environ['USER'];
     cmd = shlex.split(cmd_line);
 
     use_regex = False;
@@ -207,23 +221,79 @@ def _get_jobs_with_prefix(job_prefix):
     matching_job_list = None;
     try:
         job_list = subprocess.check_output(cmd, universal_newlines=True).split('\n');
-        if use_regex:
-           matching_job_list = [job.split(",")[1] for job in job_list if job.startswith(job_prefix)];
-        else:
-           #There should be at most one jobid here (unless there are multiple jobs with the same name ;-)
-           matching_job_list = [job.split(",")[1] for job in job_list if job.split(',')[0] == job_prefix];
-           
+        matching_job_list = [];
+        for job in job_list:
+           fields = job.strip().split(",")
+           if len(fields) < 3: continue
+           name = ",".join(fields[:-2])
+           if (use_regex and name.startswith(job_prefix)) or name == job_prefix:
+              matching_job_list.append((fields[-2], name, fields[-1]));
 
     except subprocess.CalledProcessError as e:
         logging.error( "Execution: %s failed: %s" % (e.cmd, e.returncode) );
         return None; #Here we could propagae the error upstream
     except OSError as e:
-        logging.error( "Execution: %s failed: (%d) %s" % (' '.join(slurm_cmd_list), e.errno, e.strerror ));
+        logging.error( "Execution: %s failed: (%d) %s" % (' '.join(cmd), e.errno, e.strerror ));
         return None;    
 
     return matching_job_list;
 
 
+def _get_jobs_with_prefix(job_prefix):
+    """
+    :param job_prefix: Prefix or name of the job dependency. This could potentially be regex in the future, but for now we can maintain LSF compatibility
+    :type: str
+
+    :return: A list of job ids currently in the system whose name match this prefix or job name
+    :rtype: list of str
+    """
+
+    job_list = _get_job_states(job_prefix);
+    if job_list is None: return None;
+
+    #There should be at most one jobid per name (unless there are multiple jobs with the same name ;-)
+    return [job[0] for job in job_list];
+
+
+def cancel_jobs(args_dict):
+    """
+    Cancels the jobs given by -cancel with scancel or bkill.
+
+    :return: error code of scancel or bkill
+    :rtype: int
+    """
+    if get_scheduler() == 'slurm':
+        cmd = ['scancel'] + args_dict['cancel'];
+    else:
+        cmd = ['bkill'] + args_dict['cancel'];
+
+    try:
+        subprocess.check_call(cmd);
+    except subprocess.CalledProcessError as e:
+        logging.error( "Execution: %s failed: %s" % (e.cmd, e.returncode) );
+        return e.returncode;
+    except OSError as e:
+        logging.error( "Execution: %s failed: (%d) %s" % (' '.join(cmd), e.errno, e.strerror ));
+        return e.errno;
+    return 0;
+
+
+def print_job_states(args_dict):
+    """
+    Prints "jobId,jobName,state" for each job matching -jobName, e.g. to
+    poll the state of many background jobs with one call.
+
+    :return: 0 on success, 1 if the scheduler could not be queried
+    :rtype: int
+    """
+    job_list = _get_job_states(args_dict['jobName']);
+    if job_list is None: return 1;
+
+    for job in job_list:
+        print(",".join(job));
+    return 0;
+
+
 def _slurm_qos2partition(qos_name):
     """
     Given Slurm QOS, this function maps it to the correct partition. This is specific to Slurm, where
@@ -309,7 +379,11 @@ def submit_to_slurm(args_dict):
 
         if args_dict['array']: raise RuntimeError("--array not supported for interactive job")
 
-        slurm_cmd_list = ['salloc', '-Q'] + slurm_cmd_list + ['srun', '-Q'] + slurm_cmd_list; 
+        srun_cmd_list = ['srun', '-Q'] + slurm_cmd_list;
+        if args_dict['printJobId']:
+            # salloc -Q is quiet, report the allocation from within it
+            srun_cmd_list = ['sh', '-c', 'echo "mysub: job $SLURM_JOB_ID" >&2; exec "$@"', 'sh'] + srun_cmd_list;
+        slurm_cmd_list = ['salloc', '-Q'] + slurm_cmd_list + srun_cmd_list; 
         if args_dict['wait']: slurm_cmd_list += [ '--output='+out_name]
         cmds = args_dict['cmd']
         if len(cmds) > 0:
@@ -346,6 +420,7 @@ def submit_to_slurm(args_dict):
         slurm_cmd_list += [ out_opt ]
 
         slurm_cmd_list.insert(0, 'sbatch');
+        slurm_cmd_list.insert(1, '--parsable');
         cmds = args_dict['cmd']
         if len(cmds) > 0:
            cmdStr = "#!"+shell+"\n"
@@ -364,9 +439,12 @@ def submit_to_slurm(args_dict):
             warn(' '.join(slurm_cmd_list));
 
         try:
-            cmd_output = subprocess.check_output(slurm_cmd_list);
+            cmd_output = subprocess.check_output(slurm_cmd_list, universal_newlines=True);
             if script is not None: os.remove(script)
             #warn(cmd_output.strip())
+            if args_dict['printJobId']:
+                # --parsable: jobid[;cluster]
+                print(cmd_output.strip().split(';')[0]);
         except subprocess.CalledProcessError as e:
             logging.error( "Execution: %s failed: %s" % (e.cmd, e.returncode) );
             return e.returncode; #Here we could propagae the error upstream
@@ -471,7 +549,7 @@ if __name__ == '__main__':
     parser.add_argument('-q' ,       metavar='queue_or_qos', choices=['veryshort','short','medium','long','verylong','smp','gpu'], help='veryshort|short|medium|long|verylong|smp|gpu', default='veryshort')
     parser.add_argument('-limit',    metavar='0:00',        type=str, help='time limit, e.g. ("12" = 12H, "1:30" = 1.5H), if set no -q option is needed.')
     parser.add_argument('-nCPU',     metavar='int',         type=int, help='Number of CPUs', default=1)
-    parser.add_argument('-jobName' , metavar='string',      type=str, help='Job Name also Log Name', required=True)
+    parser.add_argument('-jobName' , metavar='string',      type=str, help='Job Name also Log Name, required unless -cancel is given')
     parser.add_argument('-output' , metavar='string',      type=str, help='Write stdout and stderror to this file. (default -jobName.log)')
     parser.add_argument('-totalMem', metavar='int',         type=int, help='Total Shared Memory in GB', default=10)
     parser.add_argument('-array',    metavar='int',     type=int, nargs=2, help='start array job with min and max id (lsf: must be > 0)')
@@ -482,6 +560,9 @@ if __name__ == '__main__':
     parser.add_argument('-x',           action='store_true' ,         help='Exclusive Other Jobs On Node')
     parser.add_argument('-nGPU',     metavar='int',          type=int,help='Number of GPUs', default=0)
     parser.add_argument('-debug',   action ='store_true',             help='Print additional debug info to stderr')
+    parser.add_argument('-printJobId', action ='store_true',          help='Print the id of the submitted job, to stdout for background jobs, as "mysub: job <id>" to stderr for interactive jobs')
+    parser.add_argument('-cancel',   metavar='jobId',        nargs='+', help='Do not submit, cancel the given jobs with scancel or bkill')
+    parser.add_argument('-status',   action ='store_true',             help='Do not submit, print "jobId,jobName,state" of the jobs matching -jobName, e.g. \'knime_*\'')
     parser.add_argument('-GPUType',  metavar='int',          type=str,help='GAI,None', default=None,
                         choices=['GAI'])
     parser.add_argument('--', dest="none", metavar='command',     nargs='*',help='Commands to Submit')
@@ -497,6 +578,15 @@ if __name__ == '__main__':
     if args_dict['limit'] and args_dict['q'] == 'veryshort':
        args_dict['q'] = computeQueue(args_dict['limit'])
 
+    if args_dict['cancel']:
+       exit(cancel_jobs(args_dict))
+
+    if not args_dict['jobName']:
+       parser.error("argument -jobName is required")
+
+    if args_dict['status']:
+       exit(print_job_states(args_dict))
+
     # call submit_to_lsf() or submit_to_slurm()
     exit(locals()["submit_to_%s" % get_scheduler()](args_dict))
 
@@ -0,0 +1,204 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.knime.chem.base.node.io.sdfwriter2.DefaultSDFWriter;
+import org.knime.chem.base.node.io.sdfwriter2.SDFWriterSettings;
+import org.knime.chem.types.CtabCellFactory;
+import org.knime.chem.types.MolCellFactory;
+import org.knime.chem.types.SdfCellFactory;
+import org.knime.chem.types.SmilesCellFactory;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.container.ContainerTable;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.DefaultNodeProgressMonitor;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.Node;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.port.PortType;
+import org.knime.core.node.util.filter.NameFilterConfiguration.EnforceOption;
+import org.knime.core.node.util.filter.column.DataColumnSpecFilterConfiguration;
+import org.knime.core.node.workflow.SingleNodeContainer;
+import org.knime.core.node.workflow.virtual.parchunk.VirtualParallelizedChunkPortObjectInNodeFactory;
+
+/**
+ * The output of {@link SDFTableWriter} must be identical to the one of the
+ * KNIME SDF writer used for temp files.
+ *
+ * @author albertgo @ Genentech
+ */
+public class SDFTableWriterTest {
+
+    private static final String CTAB =
+          "  2  1  0  0  0  0  0  0  0  0999 V2000\n"
+        + "    0.0000    0.0000    0.0000 C   0  0  0  0  0  0  0  0  0  0  0  0\n"
+        + "    1.5000    0.0000    0.0000 O   0  0  0  0  0  0  0  0  0  0  0  0\n"
+        + "  1  2  1  0  0  0  0\n"
+        + "M  END\n";
+
+    private static final String MOL = "ethanol\n  test\n\n" + CTAB;
+
+    private static final String SDF = MOL + "> <origin>\nvendor\n\n$$$$\n";
+
+    private ExecutionContext m_exec;
+
+
+    @Before
+    public void setUp() {
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        NodeFactory<NodeModel> dummyFactory =
+            (NodeFactory) new VirtualParallelizedChunkPortObjectInNodeFactory(new PortType[0]);
+        m_exec = new ExecutionContext(new DefaultNodeProgressMonitor(), new Node(dummyFactory),
+                SingleNodeContainer.MemoryPolicy.CacheOnDisc,
+                new HashMap<Integer, ContainerTable>());
+    }
+
+
+    @Test
+    public void testSdf() throws Exception {
+        assertSameAsKnime(createTable(SdfCellFactory.TYPE, SdfCellFactory.create(SDF), 10));
+    }
+
+
+    @Test
+    public void testMol() throws Exception {
+        assertSameAsKnime(createTable(MolCellFactory.TYPE, MolCellFactory.create(MOL), 10));
+    }
+
+
+    @Test
+    public void testCtab() throws Exception {
+        assertSameAsKnime(createTable(CtabCellFactory.TYPE, CtabCellFactory.create(CTAB), 10));
+    }
+
+
+    /** large tables are rendered in parallel chunks */
+    @Test
+    public void testParallel() throws Exception {
+        assertSameAsKnime(createTable(SdfCellFactory.TYPE, SdfCellFactory.create(SDF), 10000));
+    }
+
+
+    @Test
+    public void testUnsupportedStructure() throws Exception {
+        BufferedDataTable table = createTable(SmilesCellFactory.TYPE,
+                                              SmilesCellFactory.create("CCO"), 1);
+        assertFalse(SDFTableWriter.isSupported(table.getDataTableSpec(), "Structure"));
+        try {
+            new SDFTableWriter(table.getDataTableSpec(), "Structure");
+            fail("Smiles structures must be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Structure"));
+        }
+    }
+
+
+    /**
+     * @return table with a structure column, every 3rd structure missing, and
+     *         string, int and double properties with missing values.
+     */
+    private BufferedDataTable createTable(final DataType structType, final DataCell struct,
+            final int nRows) {
+        DataTableSpec spec = new DataTableSpec(new DataColumnSpec[] {
+                new DataColumnSpecCreator("Name", StringCell.TYPE).createSpec(),
+                new DataColumnSpecCreator("Structure", structType).createSpec(),
+                new DataColumnSpecCreator("Count", IntCell.TYPE).createSpec(),
+                new DataColumnSpecCreator("Value", DoubleCell.TYPE).createSpec() });
+
+        BufferedDataContainer cont = m_exec.createDataContainer(spec);
+        for (int i = 0; i < nRows; i++) {
+            cont.addRowToTable(new DefaultRow(RowKey.createRowKey(i),
+                    i % 5 == 4 ? DataType.getMissingCell() : new StringCell("mol " + i + ""),
+                    i % 3 == 2 ? DataType.getMissingCell() : struct,
+                    new IntCell(i),
+                    i % 4 == 3 ? DataType.getMissingCell() : new DoubleCell(i / 7.0)));
+        }
+        cont.close();
+        return cont.getTable();
+    }
+
+
+    private void assertSameAsKnime(final BufferedDataTable table) throws Exception {
+        File knimeFile = File.createTempFile("SDFTableWriterTest", ".sdf");
+        try {
+            writeWithKnime(table, knimeFile);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new SDFTableWriter(table.getDataTableSpec(), "Structure").write(table, out, m_exec);
+
+            assertArrayEquals(Files.readAllBytes(knimeFile.toPath()), out.toByteArray());
+        } finally {
+            knimeFile.delete();
+        }
+    }
+
+
+    /** same settings as SDFSSHNodeModel.writeTMPInFile */
+    private void writeWithKnime(final BufferedDataTable table, final File sdfFile)
+            throws Exception {
+        SDFWriterSettings wSet = new SDFWriterSettings();
+        wSet.addEmptyStructuresForMissing(true);
+        wSet.fileName(sdfFile.toString());
+        wSet.overwriteOK(true);
+        wSet.structureColumn("Structure");
+
+        DataColumnSpecFilterConfiguration colFilter
+            = new DataColumnSpecFilterConfiguration("testF");
+        colFilter.loadDefaults(new String[0], new String[] { "Structure" },
+                               EnforceOption.EnforceExclusion);
+        wSet.setFilterConfiguration(colFilter);
+
+        DataTableSpec inSpec = table.getDataTableSpec();
+        CloseableRowIterator it = table.iterator();
+        try {
+            new DefaultSDFWriter(wSet).execute(inSpec, it, inSpec.getNumColumns(), m_exec);
+        } finally {
+            it.close();
+        }
+    }
+}
@@ -33,6 +33,8 @@ import org.knime.core.node.NodeLogger;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 
+import com.genentech.knime.ssh.SSHSessionPool;
+
 /**
  * The activator class controls the plug-in life cycle  within Eclipse.
  */
@@ -106,6 +108,7 @@ public class GNENodeActivator extends Plugin {
      */
     @Override
     public void stop(final BundleContext context) throws Exception {
+        SSHSessionPool.shutdownDefault();
         plugin = null;
         m_ijschService = null;
         super.stop(context);
@@ -77,6 +77,43 @@ public class Settings {
 	public static final int SSHTimeout;
 	public static final String SSHInitFileTemplate;
 	public static final String SSHRemoteHost;
+	/** seconds after which an unused pooled ssh session is closed */
+	public static final int SSHSessionIdleTTL;
+	/** seconds between keep alive messages on ssh sessions, 0 to disable */
+	public static final int SSHKeepAliveInterval;
+	/** "sessions" or "latency": how the host of a host pool is chosen for a new ssh session */
+	public static final String SSHHostSelection;
+	/** seconds between health checks of the hosts of a host pool, 0 to disable */
+	public static final int SSHHealthCheckInterval;
+	/** maximum number of commands executing concurrently per remote host, 0 for no limit */
+	public static final int SSHMaxConcurrent;
+	/** maximum number of nodes sharing one ssh session, each with its own channel,
+	 *  1 if {@link #SSHStreamOutput} is set */
+	public static final int SSHMaxChannelsPerSession;
+	/** if true the input table is streamed to the ssh command while it is being written */
+	public static final boolean SSHStreamInput;
+	/** if true nodes with the option enabled parse the sdf output of ssh commands into the 
+	 *  result table while it arrives, the layout of the table differs from the one of the 
+	 *  KNIME SDF reader */
+	public static final boolean SSHStreamOutput;
+	/** directory on the remote host for intermediate results kept on the remote host */
+	public static final String SSHRemoteScratchDir;
+	/** days after which remote intermediate results are deleted */
+	public static final int SSHRemoteScratchMaxDays;
+	/** if true parts of non executeSSH pipes feeding several branches are executed once */
+	public static final boolean SSHShareCommonPipes;
+	/** seconds between polls of the state of detached cluster jobs */
+	public static final int SSHJobPollInterval;
+	/** directory of the local result cache, null if results are not cached */
+	public static final String RESULTCacheDir;
+	/** size limit of the local result cache in MB */
+	public static final long RESULTCacheMaxSizeMB;
+	/** directory of the remote input store, null if inputs are not deduplicated */
+	public static final String INPUTStoreDir;
+	/** size limit of the remote input store in MB */
+	public static final long INPUTStoreMaxSizeMB;
+	/** days after which unused inputs are removed from the remote input store */
+	public static final int INPUTStoreMaxDays;
 	public static final Map<String, String> GNEProperties;
 
 	public static String getExchangeLocalDir() {
@@ -126,6 +163,28 @@ public class Settings {
 		SSHRemoteHost = getAttribute(ssh, "remoteHost", "rosalind.gene.com");
 		SSHTimeout = Integer.parseInt(getAttribute(ssh, "timeout", "1000"));
 		SSHInitFileTemplate = getAttribute(ssh, "initFileTemplate", "knimerc.$mode");
+		SSHSessionIdleTTL = Integer.parseInt(getAttribute(ssh, "sessionIdleTTL", "300"));
+		SSHKeepAliveInterval = Integer.parseInt(getAttribute(ssh, "keepAliveInterval", "15"));
+		SSHHostSelection = getAttribute(ssh, "hostSelection", "sessions");
+		SSHHealthCheckInterval = Integer.parseInt(getAttribute(ssh, "healthCheckInterval", "30"));
+		SSHMaxConcurrent = Integer.parseInt(getAttribute(ssh, "maxConcurrent", "8"));
+		SSHMaxChannelsPerSession = Integer.parseInt(getAttribute(ssh, "maxChannelsPerSession", "10"));
+		SSHStreamInput = getAttribute(ssh, "streamInput", "Y").toLowerCase().startsWith("y");
+		SSHStreamOutput = getAttribute(ssh, "streamOutput", "N").toLowerCase().startsWith("y");
+		SSHRemoteScratchDir = getAttribute(ssh, "remoteScratchDir", "~/.knimeScratch");
+		SSHRemoteScratchMaxDays = Integer.parseInt(getAttribute(ssh, "remoteScratchMaxDays", "3"));
+		SSHShareCommonPipes = getAttribute(ssh, "shareCommonPipes", "N").toLowerCase().startsWith("y");
+		SSHJobPollInterval = Integer.parseInt(getAttribute(ssh, "jobPollInterval", "20"));
+
+		Element rCache = config.getChild("resultCache");
+		RESULTCacheDir = rCache == null ? null
+				: getAttribute(rCache, "dir", System.getProperty("user.home") + "/.knimeGenentech/resultCache");
+		RESULTCacheMaxSizeMB = Long.parseLong(getAttribute(rCache, "maxSizeMB", "2000"));
+
+		Element iStore = config.getChild("inputStore");
+		INPUTStoreDir = iStore == null ? null : getAttribute(iStore, "dir", "~/.knimeInputStore");
+		INPUTStoreMaxSizeMB = Long.parseLong(getAttribute(iStore, "maxSizeMB", "10000"));
+		INPUTStoreMaxDays = Integer.parseInt(getAttribute(iStore, "maxDays", "7"));
 
 		String dummy = null;
 		Element tLog = config.getChild("loggingURLTemplate");
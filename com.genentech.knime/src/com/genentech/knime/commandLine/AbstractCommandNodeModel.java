@@ -27,6 +27,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.Collection;
 
 import org.knime.core.node.CanceledExecutionException;
@@ -63,8 +64,90 @@ public abstract class AbstractCommandNodeModel extends NodeModel {
      */
     protected SSHExecutionResult runSSHExecute(final SDFCmdPortObjectSpec spec, final ExecutionContext exec,
             final File tmpInFile) throws Exception {
+        return runSSHExecute(spec, exec, tmpInFile, null);
+    }
+
+    /**
+     * Same as {@link #runSSHExecute(SDFCmdPortObjectSpec, ExecutionContext, File)}
+     * but stdOut is written to the given stream while it arrives if it is not null.
+     */
+    protected SSHExecutionResult runSSHExecute(final SDFCmdPortObjectSpec spec, final ExecutionContext exec,
+            final File tmpInFile, final OutputStream stdOut) throws Exception {
+        Collection<FlowVariable> vars = getAvailableInputFlowVariables().values();
+        SSHExecutionResult sshRes = SSHExecutionHelper.execute(spec, vars, exec, tmpInFile, stdOut);
+        return processResult(sshRes);
+    }
+
+    /**
+     * Execute the command in spec.getCommandObject with the sdf of inPort as stdin.
+     * 
+     * If inPort holds an intermediate result on the remote host it is read
+     * there instead of being downloaded and uploaded again.
+     */
+    protected SSHExecutionResult runSSHExecuteWithInput(final SDFCmdPortObjectSpec spec, 
+            final ExecutionContext exec, final SDFCmdPortObject inPort) throws Exception {
+        if (!inPort.isRemote()) 
+            return runSSHExecute(spec, exec, inPort.getSDFile(exec));
+
+        Collection<FlowVariable> vars = getAvailableInputFlowVariables().values();
+        SSHExecutionResult sshRes = SSHExecutionHelper.executeRemote(spec, vars, exec, 
+                null, inPort.getRemoteFile(), null);
+        return processResult(sshRes);
+    }
+
+    /**
+     * Execute the command in spec.getCommandObject and return its output port.
+     * 
+     * If {@link SSHConfiguration#isRemoteIntermediates()} the output is written
+     * to a file in the remote scratch directory and the returned port only
+     * references it.
+     * 
+     * @param inPort port providing stdin of the command, may be null.
+     */
+    protected SDFCmdPortObject runSSHExecuteToPort(final SDFCmdPortObjectSpec spec, 
+            final ExecutionContext exec, final SDFCmdPortObject inPort) throws Exception {
+        if (!spec.getSSHConfiguration().isRemoteIntermediates()) {
+            SSHExecutionResult sshRes = inPort == null 
+                        ? runSSHExecute(spec, exec, (File) null)
+                        : runSSHExecuteWithInput(spec, exec, inPort);
+            return new SDFCmdPortObject(spec, sshRes.getStdOut());
+        }
+
+        File inFile = null;
+        String remoteInFile = null;
+        if (inPort != null) {
+            if (inPort.isRemote())
+                remoteInFile = inPort.getRemoteFile();
+            else
+                inFile = inPort.getSDFile(exec);
+        }
+        String remoteOutFile = SSHExecutionHelper.createRemoteScratchFile();
+        Collection<FlowVariable> vars = getAvailableInputFlowVariables().values();
+        SSHExecutionResult sshRes = SSHExecutionHelper.executeRemote(spec, vars, exec, 
+                inFile, remoteInFile, remoteOutFile);
+        processResult(sshRes);
+        return SDFCmdPortObject.createRemote(spec, remoteOutFile);
+    }
+
+    /**
+     * Execute the command in spec.getCommandObject on the records in inFile
+     * using up to nJobs concurrent remote jobs each processing a chunk of inFile.
+     * 
+     * The command must process records independently.
+     * @see ChunkedSSHExecutor
+     */
+    protected SSHExecutionResult runSSHExecuteChunked(final SDFCmdPortObjectSpec spec, 
+            final ExecutionContext exec, final File inFile, final int nJobs) throws Exception {
         Collection<FlowVariable> vars = getAvailableInputFlowVariables().values();
-        SSHExecutionResult sshRes = SSHExecutionHelper.execute(spec, vars, exec, tmpInFile);
+        SSHExecutionResult sshRes = new ChunkedSSHExecutor(spec, vars, exec, nJobs).execute(inFile);
+        return processResult(sshRes);
+    }
+
+    /**
+     * Keep the stderr of sshRes as error output of this node and warn if the
+     * command failed.
+     */
+    protected SSHExecutionResult processResult(final SSHExecutionResult sshRes) {
         if( m_errorOutFile != null ) 
             m_errorOutFile.delete();
         m_errorOutFile = sshRes.getStdErr();
@@ -0,0 +1,231 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.workflow.NodeContext;
+import org.knime.core.node.workflow.WorkflowManager;
+
+import com.genentech.knime.Settings;
+
+/**
+ * Limits the number of commands executing concurrently on a remote host.
+ *
+ * Without a limit a workflow with many parallel branches, or several
+ * workflows on a KNIME server, open more ssh sessions than sshd accepts
+ * (MaxStartups, MaxSessions) and the refused connections end up in 
+ * connection retries. Each execution needs a permit from the controller of
+ * the host:port its session was opened to, i.e. after a host of a host pool
+ * was selected. At most {@link Settings#SSHMaxConcurrent} are handed out 
+ * per host, independent of the user logging in. Controllers are dropped 
+ * when no execution holds or waits for a permit.
+ *
+ * Waiting executions are queued per tenant, the user and workflow of the
+ * node. Free permits go round robin to the tenants so that a workflow with
+ * hundreds of chunks does not starve the others. Nodes show how long they
+ * have been waiting in their progress message.
+ *
+ * @author albertgo @ Genentech
+ */
+public class AdmissionController {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(AdmissionController.class);
+
+    /** interval in which waiting nodes check for cancellation and update their message */
+    private static final long CHECK_INTERVAL_MS = 500;
+
+    /** waits longer than this are logged */
+    private static final long LOG_WAIT_MS = 1000;
+
+    private static final Map<String, AdmissionController> CONTROLLERS
+                = new HashMap<String, AdmissionController>();
+
+    private final String m_host;
+    private final int m_limit;
+    /** executions holding or waiting for a permit, guarded by CONTROLLERS */
+    private int m_users = 0;
+    private int m_running = 0;
+    /** queues of waiting tickets per tenant, the next permit goes to the first tenant */
+    private final LinkedHashMap<String, Deque<Ticket>> m_waiting 
+                = new LinkedHashMap<String, Deque<Ticket>>();
+
+
+    private AdmissionController(final String host, final int limit) {
+        m_host = host;
+        m_limit = limit;
+    }
+
+
+    /**
+     * Wait for a permit of the controller of host:port. All users of a host
+     * share its controller, they are separated as tenants.
+     * The permit must be returned with {@link #release()}.
+     *
+     * @return the controller that granted the permit, null if the number of 
+     *         executions is not limited.
+     * @throws CanceledExecutionException if exec was canceled while waiting.
+     */
+    public static AdmissionController acquire(final String host, final int port,
+            final String tenant, final ExecutionMonitor exec) 
+            throws CanceledExecutionException, InterruptedException {
+        if (Settings.SSHMaxConcurrent <= 0) return null;
+
+        String key = host + ':' + port;
+        AdmissionController ac;
+        synchronized (CONTROLLERS) {
+            ac = CONTROLLERS.get(key);
+            if (ac == null) {
+                ac = new AdmissionController(key, Settings.SSHMaxConcurrent);
+                CONTROLLERS.put(key, ac);
+            }
+            ac.m_users++;
+        }
+
+        boolean granted = false;
+        try {
+            ac.acquire(tenant, exec);
+            granted = true;
+            return ac;
+        } finally {
+            if (!granted) ac.leave();
+        }
+    }
+
+
+    /**
+     * @return the user and workflow of the node executing in this thread.
+     */
+    public static String getTenant(final SSHConfiguration sshConfig) {
+        String user = sshConfig.getUser();
+        if (user == null || user.trim().isEmpty()) user = System.getProperty("user.name");
+
+        NodeContext ctx = NodeContext.getContext();
+        WorkflowManager wfm = ctx == null ? null : ctx.getWorkflowManager();
+        if (wfm == null) return user;
+        return user + '/' + wfm.getProjectWFM().getNameWithID();
+    }
+
+
+    /**
+     * Wait for a permit, the progress message of exec shows the waiting time.
+     *
+     * @throws CanceledExecutionException if exec was canceled while waiting.
+     */
+    private void acquire(final String tenant, final ExecutionMonitor exec) 
+            throws CanceledExecutionException, InterruptedException {
+        Ticket ticket;
+        synchronized (this) {
+            if (m_running < m_limit && m_waiting.isEmpty()) {
+                m_running++;
+                return;
+            }
+            ticket = new Ticket();
+            Deque<Ticket> queue = m_waiting.get(tenant);
+            if (queue == null) {
+                queue = new ArrayDeque<Ticket>();
+                m_waiting.put(tenant, queue);
+            }
+            queue.add(ticket);
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            synchronized (this) {
+                while (!ticket.m_granted) {
+                    exec.setMessage(String.format(
+                            "Waiting for %s: %d commands running, queued for %d sec",
+                            m_host, m_running, (System.currentTimeMillis() - start) / 1000));
+                    wait(CHECK_INTERVAL_MS);
+                    if (!ticket.m_granted) exec.checkCanceled();
+                }
+            }
+        } catch (CanceledExecutionException | InterruptedException e) {
+            synchronized (this) {
+                if (ticket.m_granted) {
+                    // granted while checking for cancellation
+                    passOn();
+                } else {
+                    Deque<Ticket> queue = m_waiting.get(tenant);
+                    queue.remove(ticket);
+                    if (queue.isEmpty()) m_waiting.remove(tenant);
+                }
+            }
+            throw e;
+        }
+
+        long waited = System.currentTimeMillis() - start;
+        exec.setMessage(String.format("Executing on %s after waiting %d sec", m_host, waited / 1000));
+        if (waited > LOG_WAIT_MS)
+            LOGGER.info(String.format("%s waited %d ms for a free slot on %s", tenant, waited, m_host));
+    }
+
+
+    /**
+     * Return a permit, it is passed to the next waiting tenant.
+     */
+    public void release() {
+        passOn();
+        leave();
+    }
+
+
+    /** drop the controller if nobody holds or waits for a permit */
+    private void leave() {
+        synchronized (CONTROLLERS) {
+            if (--m_users == 0) CONTROLLERS.remove(m_host);
+        }
+    }
+
+
+    private synchronized void passOn() {
+        m_running--;
+        Iterator<Map.Entry<String, Deque<Ticket>>> it = m_waiting.entrySet().iterator();
+        if (!it.hasNext()) return;
+
+        Map.Entry<String, Deque<Ticket>> first = it.next();
+        String tenant = first.getKey();
+        Deque<Ticket> queue = first.getValue();
+        Ticket ticket = queue.poll();
+        // the tenant goes to the end of the line
+        it.remove();
+        if (!queue.isEmpty()) m_waiting.put(tenant, queue);
+
+        ticket.m_granted = true;
+        m_running++;
+        notifyAll();
+    }
+
+
+    private static final class Ticket {
+        private boolean m_granted = false;
+    }
+}
@@ -137,6 +137,16 @@ public abstract class CMDProgramDefinition implements
 
     public abstract String getHelpTxt();
 
+    /**
+     * @return false if the output of this command does not only depend on
+     *         its command line and input, e.g. because it reads remote files
+     *         or is non-deterministic, so that results must not be taken
+     *         from the {@link ResultCache}.
+     */
+    public boolean isCacheable() {
+        return true;
+    }
+
 
     public CMDProgramDefinition(final String name, final String label, final String command,
             final String subFolder, final CMDPortType[] inPorts, final CMDPortType[] outPort,
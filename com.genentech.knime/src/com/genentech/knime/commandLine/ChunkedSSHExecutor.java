@@ -0,0 +1,519 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.workflow.FlowVariable;
+import org.knime.core.node.workflow.NodeContext;
+
+import com.jcraft.jsch.JSchException;
+
+/**
+ * Executes a command on an sdf file by splitting it into record aligned
+ * chunks which are processed by concurrent {@link SSHExecutionHelper}
+ * invocations, each in its own mysub job. The outputs are concatenated in
+ * the order of the input. The input of a chunk is deleted when it completed,
+ * its output as soon as it was appended after the outputs of all preceding
+ * chunks.
+ *
+ * The number of records per chunk is adapted to the observed throughput so
+ * that a chunk takes about {@link #TARGET_CHUNK_MS}. Chunks failing with a
+ * transport error, e.g. a lost connection, are retried individually. A 
+ * non zero exit status of the command is not retried: the other chunks are
+ * canceled and the execution fails.
+ *
+ * This is only valid for commands which process each record independently.
+ *
+ * @author albertgo @ Genentech
+ */
+public class ChunkedSSHExecutor {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(ChunkedSSHExecutor.class);
+
+    private static final int INITIAL_CHUNK_RECORDS = 1000;
+    private static final int MIN_CHUNK_RECORDS = 100;
+    private static final int MAX_CHUNK_RECORDS = 100000;
+    private static final long TARGET_CHUNK_MS = 2 * 60 * 1000L;
+    private static final int MAX_CHUNK_ATTEMPTS = 3;
+    /** seconds to wait for the remote cancellation of the outstanding chunks */
+    private static final int CANCEL_WAIT_S = 30;
+    /** characters of the stderr of a failed chunk in the error message */
+    private static final int MAX_ERR_CHARS = 2000;
+
+    private final SDFCmdPortObjectSpec m_spec;
+    private final Collection<FlowVariable> m_vars;
+    private final ExecutionContext m_exec;
+    private final int m_nJobs;
+
+    /** records per ms of the completed chunks, 0 if none completed yet */
+    private volatile double m_recordsPerMs = 0;
+
+
+    /**
+     * @param nJobs maximum number of concurrent remote jobs.
+     */
+    public ChunkedSSHExecutor(final SDFCmdPortObjectSpec spec, final Collection<FlowVariable> vars,
+            final ExecutionContext exec, final int nJobs) {
+        m_spec = spec;
+        m_vars = vars;
+        m_exec = exec;
+        m_nJobs = nJobs;
+    }
+
+
+    /**
+     * Execute the command in the spec on the records in inFile.
+     *
+     * @return result with the concatenated stdout and stderr of all chunks.
+     * @throws IOException if a chunk returned a non zero exit status, the 
+     *         outstanding chunks are canceled.
+     */
+    public SSHExecutionResult execute(final File inFile) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(m_nJobs, new ThreadFactory() {
+            private int m_count = 0;
+
+            @Override
+            public synchronized Thread newThread(final Runnable r) {
+                Thread t = new Thread(r, "GNE-SSH-Chunk-" + m_count++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        CompletionService<Chunk> done = new ExecutorCompletionService<Chunk>(pool);
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        Merger merger = new Merger(chunks);
+        try {
+            long fileLen = Math.max(1, inFile.length());
+            long[] doneBytes = new long[1];
+            int pending = 0;
+
+            InputStream in = new FileInputStream(inFile);
+            try {
+                ChunkSplitter splitter = new ChunkSplitter(in, fileLen);
+                Chunk chunk;
+                while ((chunk = splitter.next(chunks.size())) != null) {
+                    chunks.add(chunk);
+                    done.submit(createTask(chunk));
+                    pending++;
+
+                    // limit the number of chunks waiting for or in execution
+                    while (pending >= 2 * m_nJobs) {
+                        if (waitForChunk(done, fileLen, doneBytes, merger)) pending--;
+                    }
+                }
+            } finally {
+                in.close();
+            }
+
+            while (pending > 0) {
+                if (waitForChunk(done, fileLen, doneBytes, merger)) pending--;
+            }
+
+            return merger.getResult();
+
+        } finally {
+            // interrupts running chunks, their remote commands are canceled
+            pool.shutdownNow();
+            if (!pool.awaitTermination(CANCEL_WAIT_S, TimeUnit.SECONDS))
+                LOGGER.warn("Chunks did not terminate within " + CANCEL_WAIT_S + " sec");
+            merger.close();
+            for (Chunk c : chunks)
+                c.delete();
+        }
+    }
+
+
+    /**
+     * Wait up to 100ms for a chunk to complete, update progress and append
+     * the outputs which are complete in input order.
+     *
+     * @return true if a chunk completed.
+     */
+    private boolean waitForChunk(final CompletionService<Chunk> done, final long fileLen,
+            final long[] doneBytes, final Merger merger) throws Exception {
+        m_exec.checkCanceled();
+        Future<Chunk> f = done.poll(100, TimeUnit.MILLISECONDS);
+        if (f == null) return false;
+
+        Chunk c;
+        try {
+            c = f.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+
+        if (c.m_status != 0) {
+            throw new IOException(String.format(
+                    "Chunk %d returned status %d, the remaining chunks were canceled: %s",
+                    c.m_idx + 1, c.m_status, c.readErr(MAX_ERR_CHARS)));
+        }
+        c.completed();
+        merger.appendCompleted();
+
+        doneBytes[0] += c.m_inBytes;
+        m_exec.setProgress(Math.min(1.0, doneBytes[0] / (double) fileLen),
+                           "Chunk " + (c.m_idx + 1) + " completed");
+        return true;
+    }
+
+
+    private Callable<Chunk> createTask(final Chunk chunk) {
+        final ExecutionContext subExec = m_exec.createSubExecutionContext(0);
+        // the chunks are queued as part of this node's workflow, see AdmissionController
+        final NodeContext ctx = NodeContext.getContext();
+        return new Callable<Chunk>() {
+            @Override
+            public Chunk call() throws Exception {
+                if (ctx == null) return executeChunk();
+                NodeContext.pushContext(ctx);
+                try {
+                    return executeChunk();
+                } finally {
+                    NodeContext.removeLastContext();
+                }
+            }
+
+            private Chunk executeChunk() throws Exception {
+                for (int attempt = 1; ; attempt++) {
+                    long start = System.currentTimeMillis();
+                    try {
+                        SSHExecutionResult res = SSHExecutionHelper.execute(
+                                                    m_spec, m_vars, subExec, chunk.m_in);
+                        chunk.setResult(res);
+                        // a non zero status is a failure of the command, not retried
+                        if (res.getStatus() == 0)
+                            updateThroughput(chunk.m_nRecords, System.currentTimeMillis() - start);
+                        return chunk;
+
+                    } catch (CanceledExecutionException e) {
+                        throw e;
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        if (!isTransportFailure(e) || attempt >= MAX_CHUNK_ATTEMPTS) throw e;
+                        LOGGER.warn(String.format("Chunk %d failed: %s, retrying",
+                                                  chunk.m_idx + 1, e.getMessage()));
+                    }
+                }
+            }
+        };
+    }
+
+
+    /**
+     * @return true if e is a failure of the ssh connection, the chunk can 
+     *         then be executed again.
+     */
+    private static boolean isTransportFailure(final Exception e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof JSchException || t instanceof SocketException) return true;
+        }
+        return false;
+    }
+
+
+    private synchronized void updateThroughput(final long nRecords, final long ms) {
+        double rate = nRecords / (double) Math.max(1, ms);
+        m_recordsPerMs = m_recordsPerMs == 0 ? rate : 0.7 * m_recordsPerMs + 0.3 * rate;
+    }
+
+
+    /**
+     * @return number of records for the next chunk based on the throughput.
+     */
+    private long getAdaptiveChunkSize() {
+        double rate = m_recordsPerMs;
+        if (rate == 0) return INITIAL_CHUNK_RECORDS;
+        long size = (long) (rate * TARGET_CHUNK_MS);
+        return Math.max(MIN_CHUNK_RECORDS, Math.min(MAX_CHUNK_RECORDS, size));
+    }
+
+
+    /**
+     * Concatenates stdout and stderr of the chunks in input order while they 
+     * complete.
+     */
+    private static class Merger {
+        private final List<Chunk> m_chunks;
+        private File m_outFile;
+        private File m_errFile;
+        private FileOutputStream m_out;
+        private FileOutputStream m_err;
+        /** index of the next chunk to append */
+        private int m_next = 0;
+        private int m_status = 0;
+
+        Merger(final List<Chunk> chunks) {
+            m_chunks = chunks;
+        }
+
+        /**
+         * Append the outputs of the completed chunks following the last
+         * appended chunk and delete them.
+         */
+        void appendCompleted() throws IOException {
+            if (m_out == null) {
+                m_outFile = File.createTempFile("SDFCmdNodeOutputTable", ".sdf");
+                m_errFile = File.createTempFile("SDFCmdNodeOutputTable", ".txt");
+                m_out = new FileOutputStream(m_outFile);
+                m_err = new FileOutputStream(m_errFile);
+            }
+            while (m_next < m_chunks.size() && m_chunks.get(m_next).isCompleted()) {
+                Chunk c = m_chunks.get(m_next++);
+                append(c.m_out, m_out.getChannel());
+                append(c.m_err, m_err.getChannel());
+                if (m_status == 0) m_status = c.m_status;
+                c.delete();
+            }
+        }
+
+        /**
+         * @return the concatenated outputs of all chunks, they must all have
+         *         been appended.
+         */
+        SSHExecutionResult getResult() throws IOException {
+            appendCompleted();
+            if (m_next < m_chunks.size()) 
+                throw new IllegalStateException("Chunk " + (m_next + 1) + " did not complete");
+            m_out.close();
+            m_err.close();
+            SSHExecutionResult res = new SSHExecutionResult(m_status, m_outFile, m_errFile);
+            m_outFile = null;
+            m_errFile = null;
+            return res;
+        }
+
+        /**
+         * Close the outputs and delete them unless they were returned by 
+         * {@link #getResult()}.
+         */
+        void close() throws IOException {
+            if (m_out == null) return;
+            m_out.close();
+            m_err.close();
+            if (m_outFile != null) m_outFile.delete();
+            if (m_errFile != null) m_errFile.delete();
+        }
+    }
+
+
+    private static void append(final File f, final FileChannel out) throws IOException {
+        if (f == null) return;
+
+        FileInputStream in = new FileInputStream(f);
+        try {
+            FileChannel ch = in.getChannel();
+            long pos = 0;
+            long size = ch.size();
+            while (pos < size)
+                pos += ch.transferTo(pos, size - pos, out);
+        } finally {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Splits the input into chunk files at $$$$ lines without decoding it.
+     */
+    private class ChunkSplitter {
+        private final InputStream m_in;
+        private final long m_fileLen;
+        private final byte[] m_buf = new byte[1 << 16];
+        private int m_pos = 0;
+        private int m_len = 0;
+        private boolean m_eof = false;
+
+        // state of the line currently being read
+        private int m_linePos = 0;
+        private boolean m_lineIsSep = true;
+
+        private long m_totalRecords = 0;
+        private long m_totalBytes = 0;
+
+        ChunkSplitter(final InputStream in, final long fileLen) {
+            m_in = in;
+            m_fileLen = fileLen;
+        }
+
+
+        /**
+         * @return next chunk or null if the input is exhausted.
+         */
+        Chunk next(final int idx) throws IOException, CanceledExecutionException {
+            m_exec.checkCanceled();
+            if (m_eof && m_pos >= m_len) return null;
+
+            File f = File.createTempFile("SDFCmdChunk_", ".sdf");
+            OutputStream out = new BufferedOutputStream(
+                    RemoteInputStore.hashWhileWriting(f, new FileOutputStream(f)));
+            long nRecords = 0;
+            long nBytes = 0;
+            long limit = getChunkLimit();
+            try {
+                while (true) {
+                    if (m_pos >= m_len) {
+                        m_len = m_eof ? -1 : m_in.read(m_buf);
+                        m_pos = 0;
+                        if (m_len < 0) {
+                            m_eof = true;
+                            m_len = 0;
+                            break;
+                        }
+                    }
+
+                    int start = m_pos;
+                    boolean full = false;
+                    while (m_pos < m_len) {
+                        byte b = m_buf[m_pos++];
+                        if (b == '\n') {
+                            boolean recEnd = m_lineIsSep && m_linePos >= 4;
+                            m_linePos = 0;
+                            m_lineIsSep = true;
+                            if (recEnd && ++nRecords >= limit) {
+                                full = true;
+                                break;
+                            }
+                        } else {
+                            if (m_linePos < 4 && b != '$') m_lineIsSep = false;
+                            m_linePos++;
+                        }
+                    }
+                    out.write(m_buf, start, m_pos - start);
+                    nBytes += m_pos - start;
+
+                    // after the first records the limit can be estimated better
+                    if (nRecords > 0 && m_totalRecords == 0) limit = getChunkLimit(nRecords, nBytes);
+                    if (full) break;
+                }
+            } finally {
+                out.close();
+            }
+
+            if (nBytes == 0) {
+                f.delete();
+                return null;
+            }
+            m_totalRecords += nRecords;
+            m_totalBytes += nBytes;
+            return new Chunk(idx, f, Math.max(1, nRecords), nBytes);
+        }
+
+
+        private long getChunkLimit() {
+            return getChunkLimit(m_totalRecords, m_totalBytes);
+        }
+
+
+        /**
+         * Limit the chunk size by the adaptive size and such that each job gets
+         * at least one chunk if the file is small.
+         */
+        private long getChunkLimit(final long records, final long bytes) {
+            long limit = getAdaptiveChunkSize();
+            if (records > 0) {
+                double estRecords = m_fileLen / (bytes / (double) records);
+                limit = Math.min(limit, Math.max(1, (long) Math.ceil(estRecords / m_nJobs)));
+            }
+            return limit;
+        }
+    }
+
+
+    private static class Chunk {
+        private final int m_idx;
+        private final File m_in;
+        private final long m_nRecords;
+        private final long m_inBytes;
+        private File m_out;
+        private File m_err;
+        private int m_status;
+        private boolean m_completed = false;
+
+        Chunk(final int idx, final File in, final long nRecords, final long inBytes) {
+            m_idx = idx;
+            m_in = in;
+            m_nRecords = nRecords;
+            m_inBytes = inBytes;
+        }
+
+        /** @return the first maxChars of the stderr of the chunk */
+        synchronized String readErr(final int maxChars) throws IOException {
+            if (m_err == null) return "";
+            String err = new String(Files.readAllBytes(m_err.toPath()), StandardCharsets.UTF_8);
+            return err.length() <= maxChars ? err.trim() : err.substring(0, maxChars) + "...";
+        }
+
+        /** keep the result of the last attempt */
+        synchronized void setResult(final SSHExecutionResult res) {
+            if (m_out != null) m_out.delete();
+            if (m_err != null) m_err.delete();
+            m_out = res.getStdOut();
+            m_err = res.getStdErr();
+            m_status = res.getStatus();
+        }
+
+        /** the input is not needed anymore once the chunk completed */
+        synchronized void completed() {
+            m_completed = true;
+            m_in.delete();
+        }
+
+        synchronized boolean isCompleted() {
+            return m_completed;
+        }
+
+        synchronized void delete() {
+            m_in.delete();
+            if (m_out != null) m_out.delete();
+            if (m_err != null) m_err.delete();
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+
+import com.genentech.knime.Settings;
+
+/**
+ * Polls the state of detached cluster jobs, see {@link SSHConfiguration#isDetached()}.
+ *
+ * There is one monitor per remote host, user and init script. The state of
+ * all jobs of a monitor is queried with a single "mysub.py -status" call
+ * (one squeue or bjobs) every {@link Settings#SSHJobPollInterval} seconds,
+ * independent of the number of running jobs. No ssh channel is open between
+ * polls.
+ *
+ * The same call checks for the exit status file the job writes into its
+ * spool directory when the command finished. A job is complete when the
+ * file exists or the scheduler reports a final state. A job that was listed
+ * and disappeared without an exit status ended abnormally, e.g. it was 
+ * killed. A job that is never listed and leaves no exit status is reported
+ * as lost.
+ *
+ * @author albertgo @ Genentech
+ */
+public class ClusterJobMonitor {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(ClusterJobMonitor.class);
+
+    /** final states of slurm (squeue) and lsf (bjobs -a) jobs */
+    private static final Set<String> FINAL_STATES = new HashSet<String>(Arrays.asList(
+            "COMPLETED", "FAILED", "CANCELLED", "TIMEOUT", "OUT_OF_MEMORY", "NODE_FAIL",
+            "PREEMPTED", "BOOT_FAIL", "DEADLINE", "DONE", "EXIT"));
+
+    /** polls a listed job may be missing without exit status before it is considered ended */
+    private static final int MAX_UNSEEN_POLLS = 2;
+
+    /** time a job may be unknown to the scheduler without exit status before it is lost */
+    private static final long MAX_UNLISTED_MS = 10 * 60 * 1000L;
+
+    /** prefix of the lines reporting existing exit status files */
+    private static final String EXIT_MARK = "knimeExit ";
+
+    /** consecutive failed polls after which all jobs of a monitor fail */
+    private static final int MAX_POLL_FAILURES = 5;
+
+    /** interval in which waiting nodes check for cancellation */
+    private static final long CHECK_INTERVAL_MS = 100;
+
+    private static final ScheduledExecutorService POLLER =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(r, "GNE-SSH-Job-Poller");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+    private static final Map<String, ClusterJobMonitor> MONITORS
+                = new HashMap<String, ClusterJobMonitor>();
+
+    private final SSHConfiguration m_sshConfig;
+    private final Map<String, Job> m_jobs = new ConcurrentHashMap<String, Job>();
+    private ScheduledFuture<?> m_poll;
+    private int m_failedPolls = 0;
+
+
+    private ClusterJobMonitor(final SSHConfiguration sshConfig) {
+        m_sshConfig = sshConfig;
+    }
+
+
+    /**
+     * @return the monitor for the host, user and init script of sshConfig.
+     */
+    public static ClusterJobMonitor getMonitor(final SSHConfiguration sshConfig) {
+        String key = sshConfig.getUser() + '@' + sshConfig.getRemoteHost() + ':' 
+                   + sshConfig.getPortNumber() + ' ' + sshConfig.getInitScriptName();
+        synchronized (MONITORS) {
+            ClusterJobMonitor mon = MONITORS.get(key);
+            if (mon == null) {
+                mon = new ClusterJobMonitor(sshConfig);
+                MONITORS.put(key, mon);
+            }
+            return mon;
+        }
+    }
+
+
+    /**
+     * Start monitoring a submitted job.
+     * 
+     * @param exitFile remote file the job writes its exit status to when 
+     *        the command finished.
+     */
+    public Job add(final String jobId, final String exitFile) {
+        Job job = new Job(jobId, exitFile);
+        m_jobs.put(jobId, job);
+        synchronized (this) {
+            if (m_poll == null) {
+                long interval = Math.max(1, Settings.SSHJobPollInterval);
+                m_poll = POLLER.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        poll();
+                    }
+                }, interval, interval, TimeUnit.SECONDS);
+            }
+        }
+        return job;
+    }
+
+
+    /**
+     * Stop monitoring job, e.g. because the waiting node was canceled.
+     */
+    public void remove(final Job job) {
+        m_jobs.remove(job.getId());
+    }
+
+
+    /**
+     * Query the state of all knime jobs of the user with one "mysub.py -status" call.
+     * 
+     * @param admitted false to bypass the {@link AdmissionController}.
+     * @return map from job id to state.
+     */
+    static Map<String, String> queryStates(final SSHConfiguration sshConfig, 
+            final ExecutionMonitor exec, final boolean admitted) throws Exception {
+        String out = SSHExecutionHelper.runCommand(sshConfig,
+                "source " + sshConfig.getInitScriptName() + "; "
+                + "mysub.py -status -jobName 'knime_*'", exec, admitted);
+        return parseStates(out);
+    }
+
+
+    private static Map<String, String> parseStates(final String out) {
+        Map<String, String> states = new HashMap<String, String>();
+        for (String line : out.split("\n")) {
+            if (line.startsWith(EXIT_MARK)) continue;
+            // jobId,jobName,state
+            String[] fields = line.trim().split(",");
+            if (fields.length < 3) continue;
+            states.put(fields[0], fields[fields.length - 1]);
+        }
+        return states;
+    }
+
+
+    /**
+     * @return true if state is a state of a job which is no longer running.
+     */
+    static boolean isFinal(final String state) {
+        return FINAL_STATES.contains(state);
+    }
+
+
+    private void poll() {
+        synchronized (this) {
+            if (m_jobs.isEmpty()) {
+                m_poll.cancel(false);
+                m_poll = null;
+                return;
+            }
+        }
+
+        // exit files are checked after the scheduler was queried so that a 
+        // job missing from the listing has either written its exit file or ended abnormally
+        StringBuilder script = new StringBuilder();
+        script.append("source ").append(m_sshConfig.getInitScriptName()).append("; ")
+              .append("mysub.py -status -jobName 'knime_*'; set knimeStatus = $status");
+        for (Job job : m_jobs.values()) {
+            script.append("; if ( -e ").append(job.m_exitFile).append(" ) echo '")
+                  .append(EXIT_MARK).append(job.getId()).append('\'');
+        }
+        script.append("; exit $knimeStatus");
+
+        Map<String, String> states;
+        Set<String> exited = new HashSet<String>();
+        try {
+            // the poller thread must not wait for permits held by the polled nodes
+            String out = SSHExecutionHelper.runCommand(m_sshConfig, script.toString(), 
+                                                       new ExecutionMonitor(), false);
+            states = parseStates(out);
+            for (String line : out.split("\n")) {
+                if (line.startsWith(EXIT_MARK)) exited.add(line.substring(EXIT_MARK.length()).trim());
+            }
+            m_failedPolls = 0;
+
+        } catch (Exception e) {
+            LOGGER.warn("Could not poll cluster jobs on " + m_sshConfig.getRemoteHost() 
+                        + ": " + e.getMessage());
+            if (++m_failedPolls < MAX_POLL_FAILURES) return;
+
+            for (Job job : m_jobs.values()) {
+                m_jobs.remove(job.getId());
+                job.fail(e);
+            }
+            m_failedPolls = 0;
+            return;
+        }
+
+        for (Job job : m_jobs.values()) {
+            if (job.update(states.get(job.getId()), exited.contains(job.getId())))
+                m_jobs.remove(job.getId());
+        }
+    }
+
+
+    /**
+     * A submitted cluster job.
+     */
+    public static class Job {
+        private final String m_id;
+        private final String m_exitFile;
+        private final long m_added = System.currentTimeMillis();
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        private volatile String m_state = "SUBMITTED";
+        private volatile Exception m_failure;
+        private volatile boolean m_lost = false;
+        private boolean m_seen = false;
+        private int m_unseenPolls = 0;
+
+        private Job(final String id, final String exitFile) {
+            m_id = id;
+            m_exitFile = exitFile;
+        }
+
+        public String getId() {
+            return m_id;
+        }
+
+        /** last state reported by the scheduler */
+        public String getState() {
+            return m_state;
+        }
+
+        /** 
+         * @return true if the job was never listed by the scheduler and did
+         *         not write an exit status, e.g. it was purged while KNIME 
+         *         was not running.
+         */
+        public boolean isLost() {
+            return m_lost;
+        }
+
+        /**
+         * @param state as reported by the scheduler, null if the job is not listed.
+         * @param exited true if the exit status file exists.
+         * @return true if the job is complete.
+         */
+        private boolean update(final String state, final boolean exited) {
+            if (state != null) {
+                m_seen = true;
+                m_unseenPolls = 0;
+                m_state = state;
+            }
+            if (exited || state != null && isFinal(state)) {
+                m_done.countDown();
+                return true;
+            }
+            if (state != null) return false;
+
+            if (m_seen) {
+                // the scheduler dropped the job without an exit status
+                if (++m_unseenPolls < MAX_UNSEEN_POLLS) return false;
+                m_done.countDown();
+                return true;
+            }
+            if (System.currentTimeMillis() - m_added < MAX_UNLISTED_MS) return false;
+
+            m_lost = true;
+            m_failure = new IOException("the job is not known to the scheduler and did not write " 
+                                        + m_exitFile);
+            m_done.countDown();
+            return true;
+        }
+
+        private void fail(final Exception e) {
+            m_failure = e;
+            m_done.countDown();
+        }
+
+        /**
+         * Wait until the job is complete, the state is shown as progress 
+         * message of exec.
+         * 
+         * @throws CanceledExecutionException if exec was canceled.
+         * @throws IOException if the state of the job could not be polled 
+         *         or the job was lost, see {@link #isLost()}.
+         */
+        public void await(final ExecutionMonitor exec) throws Exception {
+            String shownState = null;
+            while (!m_done.await(CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                exec.checkCanceled();
+                String state = m_state;
+                if (!state.equals(shownState)) {
+                    exec.setMessage("Cluster job " + m_id + " " + state.toLowerCase());
+                    shownState = state;
+                }
+            }
+            Exception e = m_failure;
+            if (m_lost)
+                throw new IOException("Cluster job " + m_id + " was lost: " + e.getMessage(), e);
+            if (e != null) 
+                throw new IOException("Lost track of cluster job " + m_id + ": " + e.getMessage()
+                                      + ". Execute the node again to reattach to the job.", e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.knime.core.node.ExecutionMonitor;
+
+import com.genentech.knime.ssh.ChannelCompletion;
+
+/**
+ * Executes the tcsh commands of a pipe, either on a remote host via ssh
+ * or as local process, see {@link SSHConfiguration#isLocal()}.
+ *
+ * @author albertgo @ Genentech
+ */
+public abstract class CommandExecutor {
+
+    private boolean m_bypassAdmission = false;
+    /** set when a command was started, it may be running even if execute() failed */
+    protected volatile boolean m_started = false;
+
+    /**
+     * @param compress if true the ssh session uses zlib compression.
+     */
+    public static CommandExecutor create(final SSHConfiguration sshConfig, 
+            final boolean compress) {
+        if (sshConfig.isLocal()) return new LocalCommandExecutor();
+        return new SSHCommandExecutor(sshConfig, compress);
+    }
+
+
+    /**
+     * Execute script with tcsh and wait for it to complete.
+     *
+     * @param stdIn streamed to stdin of the command, may be null.
+     * @param stdOut receives stdout, it is closed when the command completed.
+     * @param stdErr receives stderr, it is closed when the command completed.
+     * @param checks additional conditions evaluated while waiting, may be empty.
+     * @return the exit status of the command.
+     * @throws Exception if exec was canceled or a check failed. The command 
+     *         is signalled to stop but may still be running.
+     */
+    public abstract int execute(String script, InputStream stdIn, OutputStream stdOut, 
+            OutputStream stdErr, ExecutionMonitor exec, List<ChannelCompletion.Check> checks) 
+            throws Exception;
+
+
+    /**
+     * Copy in to file on the host executing the commands, missing
+     * directories are created.
+     */
+    public abstract void upload(InputStream in, String file) throws Exception;
+
+
+    /**
+     * Copy localFile to file on the host executing the commands, missing
+     * directories are created. Progress is reported to exec.
+     *
+     * @param resume if true only the part of localFile which is not yet in
+     *        file is transferred, e.g. after a broken connection.
+     * @throws org.knime.core.node.CanceledExecutionException if exec was canceled.
+     */
+    public abstract void upload(File localFile, String file, boolean resume, ExecutionMonitor exec) 
+            throws Exception;
+
+
+    /**
+     * Executions do not wait for a permit of the {@link AdmissionController},
+     * e.g. for stopping commands which hold a permit themselves.
+     * 
+     * @return this executor
+     */
+    public CommandExecutor bypassAdmission() {
+        m_bypassAdmission = true;
+        return this;
+    }
+
+
+    protected boolean isBypassAdmission() {
+        return m_bypassAdmission;
+    }
+
+
+    /**
+     * @return true if the last call to {@link #execute} started the command. 
+     *         If false it failed before anything was executed, e.g. while 
+     *         waiting for admission or connecting.
+     */
+    public boolean isStarted() {
+        return m_started;
+    }
+
+
+    /**
+     * @return host of a host pool which executed the last command, null if
+     *         no command was executed or the commands run locally.
+     */
+    public String getHost() {
+        return null;
+    }
+}
@@ -110,7 +110,7 @@ public class CommandList {
                 name, name, command, subfolder,
                 CMDPortType.NONE, CMDPortType.SINGLE_SDF, 
                 "", "", 
-                defOpts, help);
+                defOpts, help, false); // remote files may change
         return rdr;
     }
     
@@ -131,7 +131,7 @@ public class CommandList {
                 name, name, command, subfolder,
                 CMDPortType.NONE, CMDPortType.SINGLE_SDF, 
                 "", "", 
-                defOpts, help);
+                defOpts, help, false); // exchange file is rewritten on execution
         return knimePipe;
     }
     
@@ -151,7 +151,7 @@ public class CommandList {
                 name, name, command, subFolder,
                 CMDPortType.SINGLE_SDF, null, 
                 "", "", 
-                defOpts, help ) {
+                defOpts, help, false ) { // must write the file every time
             
             @Override
             public CommandObject createCommandObject(final CommandObject parentCommand,
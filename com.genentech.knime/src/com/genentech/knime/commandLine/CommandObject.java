@@ -22,14 +22,26 @@
 */
 package com.genentech.knime.commandLine;
 
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * A CommandObject represents the command line arguments of a node and all
  * its preceding nodes.
  * 
+ * CommandObjects are immutable and compared by their structural hash.
+ * Port specs keep the canonical instance returned by {@link #intern(CommandObject)}
+ * so that the ancestry of a pipe is shared by all its ports.
+ * 
  * @author albertgo
  *
  */
@@ -41,22 +53,24 @@ public class CommandObject {
     private final CMDProgramDefinition m_progDefinition;
 
     private final List<CommandObject> m_parentCommands;
+    
+    private final String m_structuralHash;
+    
+    private volatile PipePlan m_pipePlan;
+    
+    /** canonical instances, weak so that they are removed with the last spec using them */
+    private static final Map<CommandObject, WeakReference<CommandObject>> INTERNED =
+        new WeakHashMap<CommandObject, WeakReference<CommandObject>>();
 
     CommandObject(final String userOptions, final String mysubOptions,
             final CMDProgramDefinition progDefintion) {
-        if( progDefintion == null ) 
-            throw new IllegalArgumentException("Command Object needs program definition");
-        m_parentCommands = new ArrayList<CommandObject>();
-        m_userOptions = userOptions.replaceAll("[\n\r]" , " ");
-        m_mysubOptions = mysubOptions.replaceAll("[\n\r]" , " ");
-        m_progDefinition = progDefintion;
+        this(Collections.<CommandObject>emptyList(), userOptions, mysubOptions, progDefintion);
     }
 
     CommandObject(final CommandObject parentCommand,
             final String userOptions, final String mysubOptions,
             final CMDProgramDefinition progDefinition) {
-        this(userOptions, mysubOptions, progDefinition);
-        m_parentCommands.add(parentCommand);
+        this(Collections.singletonList(parentCommand), userOptions, mysubOptions, progDefinition);
     }
 
     /** For {@see SDFConcatenateNodeModel */
@@ -70,6 +84,48 @@ public class CommandObject {
         m_userOptions = userOptions.replaceAll("[\n\r]" , " ");
         m_mysubOptions = mysubOptions.replaceAll("[\n\r]" , " ");
         m_progDefinition = progDefintion;
+        m_structuralHash = computeStructuralHash();
+    }
+
+    /**
+     * Hash over the type, the command line rendered by the program definition,
+     * its IO options, the options and the hashes of all parents.
+     * Two command objects with the same hash produce the same pipe, also if
+     * a program definition changed its command in commandLinePrograms.xml.
+     */
+    private String computeStructuralHash() {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        List<String> parts = new ArrayList<String>();
+        parts.add(getClass().getName());
+        parts.add(m_progDefinition.getName());
+        parts.add(m_progDefinition.getCommandLine(m_userOptions));
+        parts.add(m_progDefinition.getInOptions());
+        parts.add(m_progDefinition.getOutOptions());
+        parts.add(m_userOptions);
+        parts.add(m_mysubOptions);
+        for (CommandObject parent : m_parentCommands)
+            parts.add(parent.m_structuralHash);
+        for (String part : parts) {
+            md.update(part.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+        }
+        
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : md.digest())
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    /**
+     * @return hex encoded hash identifying this command and all its parents.
+     */
+    public String getStructuralHash() {
+        return m_structuralHash;
     }
 
     public String getUserOptions() {
@@ -107,31 +163,83 @@ public class CommandObject {
      * parents.
      */
     public String getCSHPipe(boolean newLineAllowed ) {
-        return getCSHPipe(newLineAllowed, "");
+        return getPipePlan().render(newLineAllowed);
     }
 
-    protected String getCSHPipe(boolean newLineAllowed, String indent ) {
-        
-        String cmdSeparator = "\\\n";
-        String nextIndent = "   ";
-        if( ! newLineAllowed ) {
-            cmdSeparator = "";
+    /**
+     * @return the plan of the pipe executing this command and all its
+     *         parents, it is computed once and shared with child commands.
+     */
+    public PipePlan getPipePlan() {
+        PipePlan plan = m_pipePlan;
+        if (plan != null) return plan;
+
+        // parents first without recursion, pipes can be long
+        Deque<CommandObject> stack = new ArrayDeque<CommandObject>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            CommandObject co = stack.peek();
+            if (co.m_pipePlan != null) {
+                stack.pop();
+                continue;
+            }
+            List<PipePlan> inputs = new ArrayList<PipePlan>(co.m_parentCommands.size());
+            for (CommandObject parent : co.m_parentCommands) {
+                if (parent.m_pipePlan == null) 
+                    stack.push(parent);
+                else
+                    inputs.add(parent.m_pipePlan);
+            }
+            if (inputs.size() == co.m_parentCommands.size()) {
+                stack.pop();
+                co.m_pipePlan = co.createPipePlan(inputs);
+            }
         }
-        
-        String cmdLine = m_progDefinition.getCommandLine(m_userOptions);
+        return m_pipePlan;
+    }
 
-        if (m_parentCommands.size() == 0)
-            return indent + cmdLine;
+    /**
+     * @param inputs plans of the parent commands in the same order.
+     * @return the plan of this command reading the output of the parents.
+     */
+    protected PipePlan createPipePlan(final List<PipePlan> inputs) {
+        String cmdLine = m_progDefinition.getCommandLine(m_userOptions);
 
-        if (m_parentCommands.size() == 1)
-            return m_parentCommands.get(0).getCSHPipe(newLineAllowed, indent) 
-                + " " + cmdSeparator + indent + nextIndent + "| " + cmdLine;
+        if (inputs.size() == 0)
+            return PipePlan.stage(null, cmdLine);
 
-        assert false : "Unrecognized Program definition with multilple parents: " 
+        assert inputs.size() == 1 : "Unrecognized Program definition with multilple parents: " 
                       + m_progDefinition.getName();
         // only known node with multiple parents is concatenate which overrides this method
         
-        return null;
+        return PipePlan.stage(inputs.get(0), cmdLine);
+    }
+
+    /**
+     * @return the canonical instance structurally equal to cmd.
+     */
+    public static CommandObject intern(final CommandObject cmd) {
+        synchronized (INTERNED) {
+            WeakReference<CommandObject> ref = INTERNED.get(cmd);
+            CommandObject canonical = ref == null ? null : ref.get();
+            if (canonical == null) {
+                INTERNED.put(cmd, new WeakReference<CommandObject>(cmd));
+                canonical = cmd;
+            }
+            return canonical;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return m_structuralHash.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof CommandObject)) return false;
+        return m_structuralHash.equals(((CommandObject) obj).m_structuralHash);
     }
 
     @Override
@@ -33,12 +33,25 @@ import java.util.List;
  */
 public class InternalCMDProgramDefinition extends CMDProgramDefinition {
     private final String helpTxt;
+    private final boolean cacheable;
 
     public static CMDProgramDefinition createCMDProgramDefinition(
             final String name, final String label, final String command, final String subFolder,
             final CMDPortType[] inPorts, final CMDPortType[] outPort,
             final String inOpt, final String outOpt, final String defOpts,
             final String helpTxt) {
+        return createCMDProgramDefinition(name, label, command, subFolder, inPorts, outPort,
+                inOpt, outOpt, defOpts, helpTxt, true);
+    }
+
+    /**
+     * @param cacheable see {@link CMDProgramDefinition#isCacheable()}
+     */
+    public static CMDProgramDefinition createCMDProgramDefinition(
+            final String name, final String label, final String command, final String subFolder,
+            final CMDPortType[] inPorts, final CMDPortType[] outPort,
+            final String inOpt, final String outOpt, final String defOpts,
+            final String helpTxt, final boolean cacheable) {
         List<String> msgs = new ArrayList<String>();
 
         CMDProgramDefinition.validate(msgs, name, label, command, "", inPorts, outPort,
@@ -54,20 +67,35 @@ public class InternalCMDProgramDefinition extends CMDProgramDefinition {
         }
 
         return new InternalCMDProgramDefinition(name, label, command, subFolder,
-                inPorts, outPort, inOpt, outOpt, defOpts, helpTxt);
+                inPorts, outPort, inOpt, outOpt, defOpts, helpTxt, cacheable);
     }
 
     protected InternalCMDProgramDefinition(final String name, final String label,
             final String command, final String subFolder, final CMDPortType[] inPorts,
             final CMDPortType[] outPort, final String inOpt,
             final String outOpt, final String defOpts, final String helpTxt) {
+        this(name, label, command, subFolder, inPorts, outPort, inOpt, outOpt, defOpts,
+             helpTxt, true);
+    }
+
+    protected InternalCMDProgramDefinition(final String name, final String label,
+            final String command, final String subFolder, final CMDPortType[] inPorts,
+            final CMDPortType[] outPort, final String inOpt,
+            final String outOpt, final String defOpts, final String helpTxt,
+            final boolean cacheable) {
         super(name, label, command, subFolder, inPorts, outPort, inOpt, outOpt, defOpts);
 
         this.helpTxt = helpTxt;
+        this.cacheable = cacheable;
     }
 
     @Override
     public String getHelpTxt() {
         return helpTxt;
     }
-}
+
+    @Override
+    public boolean isCacheable() {
+        return cacheable;
+    }
+}
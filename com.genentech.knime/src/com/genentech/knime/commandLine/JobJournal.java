@@ -0,0 +1,158 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.knime.core.node.NodeLogger;
+
+import com.genentech.knime.Settings;
+
+/**
+ * Local record of detached cluster jobs whose results have not been fetched
+ * yet, see {@link SSHConfiguration#isDetached()}.
+ *
+ * Entries are keyed like the {@link ResultCache} by the command line, host,
+ * user and input of an execution. When the same execution is started again
+ * after the connection was lost or KNIME was restarted it reattaches to the
+ * job in flight instead of submitting it again, and continues downloading the
+ * output at the last byte received.
+ *
+ * Entries older than {@link Settings#SSHRemoteScratchMaxDays} are ignored as 
+ * the spool directory of the job has been removed from the remote host.
+ *
+ * @author albertgo @ Genentech
+ */
+public class JobJournal {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(JobJournal.class);
+
+    public static final String JOB_ID = "jobId";
+    public static final String SPOOL_DIR = "spoolDir";
+    /** remote file with the stdout of the job */
+    public static final String OUT_FILE = "outFile";
+    /** local file into which the stdout is being downloaded */
+    public static final String LOCAL_OUT_FILE = "localOutFile";
+
+    private static final String SUFFIX = ".properties";
+
+    private static final File DIR = new File(System.getProperty("user.home"), 
+                                             ".knimeGenentech/detachedJobs");
+
+    /** keys of executions running in this KNIME instance */
+    private static final Set<String> ACTIVE = new HashSet<String>();
+
+
+    private JobJournal() {} // only static methods
+
+
+    /**
+     * Reserve key for an execution in this KNIME instance.
+     * 
+     * @return false if an identical execution is already running, it must
+     *         then not use the journal.
+     */
+    public static boolean acquire(final String key) {
+        synchronized (ACTIVE) {
+            return ACTIVE.add(key);
+        }
+    }
+
+
+    public static void release(final String key) {
+        synchronized (ACTIVE) {
+            ACTIVE.remove(key);
+        }
+    }
+
+
+    /**
+     * @return the state of the job recorded for key, null if none.
+     */
+    public static Properties read(final String key) {
+        File f = new File(DIR, key + SUFFIX);
+        if (!f.isFile()) return null;
+
+        long maxAge = Settings.SSHRemoteScratchMaxDays * 24L * 3600 * 1000;
+        if (System.currentTimeMillis() - f.lastModified() > maxAge) {
+            remove(key);
+            return null;
+        }
+
+        Properties state = new Properties();
+        try {
+            InputStream in = new FileInputStream(f);
+            try {
+                state.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not read " + f + ": " + e.getMessage());
+            return null;
+        }
+        return state.getProperty(JOB_ID) == null ? null : state;
+    }
+
+
+    /**
+     * Record the state of the job for key, replacing an older record.
+     */
+    public static void write(final String key, final Properties state) {
+        try {
+            DIR.mkdirs();
+            File tmp = File.createTempFile(key, ".tmp", DIR);
+            try {
+                OutputStream out = new FileOutputStream(tmp);
+                try {
+                    state.store(out, "detached cluster job");
+                } finally {
+                    out.close();
+                }
+                Files.move(tmp.toPath(), new File(DIR, key + SUFFIX).toPath(),
+                           StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            // the job can still complete, it just can not be reattached
+            LOGGER.warn("Could not record cluster job " + state.getProperty(JOB_ID) 
+                        + ": " + e.getMessage());
+        }
+    }
+
+
+    public static void remove(final String key) {
+        new File(DIR, key + SUFFIX).delete();
+    }
+}
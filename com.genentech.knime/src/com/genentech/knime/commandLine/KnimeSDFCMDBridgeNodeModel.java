@@ -24,16 +24,22 @@ package com.genentech.knime.commandLine;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-//import org.knime.chem.base.node.io.sdf.DefaultSDFWriter;
-//import org.knime.chem.base.node.io.sdf.SDFWriterSettings;
 import org.knime.chem.base.node.io.sdfwriter2.DefaultSDFWriter;
 import org.knime.chem.base.node.io.sdfwriter2.SDFWriterSettings;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
@@ -56,6 +62,10 @@ public class KnimeSDFCMDBridgeNodeModel extends AbstractCommandNodeModel {
     private SSHConfiguration m_sshConfiguration;
     private KnimeSDFCMDBridgeSettings m_Settings;
     private File tmpExchangeFile;
+    /** file uploaded by sftp to the remote exchange dir, removed on reset */
+    private String m_stagedRemoteFile;
+    /** removal of the previously staged file, see {@link #removeStagedFile()} */
+    private volatile Future<?> m_stagedRemoval;
 
     /**
      * Constructor for the node model.
@@ -80,14 +90,18 @@ public class KnimeSDFCMDBridgeNodeModel extends AbstractCommandNodeModel {
 
         File localExchangeDir = null;
         try {
-            localExchangeDir = new File(replaceVars(m_Settings.getLocalExchangeDir()));
-            if( ! localExchangeDir.isDirectory() )
-            {   throw new InvalidSettingsException("local exchange dir invalid: " + localExchangeDir.getAbsolutePath() + " - try using flow variable");
+            if( m_Settings.isSftpStaging() ) {
+                // uploaded in execute, no shared directory needed
+                tmpExchangeFile = File.createTempFile("SDFCmd_", ".sdf");
+            } else {
+                localExchangeDir = new File(replaceVars(m_Settings.getLocalExchangeDir()));
+                if( ! localExchangeDir.isDirectory() )
+                {   throw new InvalidSettingsException("local exchange dir invalid: " + localExchangeDir.getAbsolutePath() + " - try using flow variable");
+                }
+                
+                tmpExchangeFile = File.createTempFile("SDFCmd_", ".sdf", localExchangeDir);
             }
-            
-
-            tmpExchangeFile = File.createTempFile("SDFCmd_", ".sdf", localExchangeDir);
-            String remoteFile = replaceVars(m_Settings.getRemoteExchangeDir() + "/" + tmpExchangeFile.getName());
+            String remoteFile = getRemoteFile();
             String mysubOpts = m_Settings.getMysubOptions();
             CommandObject command = CommandList.SDF_KNIME_BRIDGE.createComamndObject(remoteFile, mysubOpts);
             
@@ -108,10 +122,18 @@ public class KnimeSDFCMDBridgeNodeModel extends AbstractCommandNodeModel {
           final ExecutionContext exec) throws Exception {
         BufferedDataTable inTable = (BufferedDataTable) inData[0];
 
-        String remoteFile = m_Settings.getRemoteExchangeDir() + "/" + tmpExchangeFile.getName();
+        String remoteFile = getRemoteFile();
         String mysubOpts = m_Settings.getMysubOptions();
         CommandObject command = CommandList.SDF_KNIME_BRIDGE.createComamndObject(remoteFile, mysubOpts);
         writeTableToSDFFile(exec, inTable, tmpExchangeFile);
+        
+        if( m_Settings.isSftpStaging() && ! m_sshConfiguration.isLocal() ) {
+            removeStagedFile();
+            // the remote file name is reused, it must be gone before uploading again
+            awaitStagedFileRemoval(exec);
+            m_stagedRemoteFile = remoteFile;
+            SSHExecutionHelper.uploadResuming(m_sshConfiguration, tmpExchangeFile, remoteFile, exec);
+        }
 
         SDFCmdPortObjectSpec outSpec = new SDFCmdPortObjectSpec( command, m_sshConfiguration);
 
@@ -205,11 +227,81 @@ public class KnimeSDFCMDBridgeNodeModel extends AbstractCommandNodeModel {
         }
     }
     
+    @Override
+    protected void reset() {
+        super.reset();
+        removeStagedFile();
+    }
+    
+    @Override
+    protected void onDispose() {
+        removeStagedFile();
+    }
+    
+    private static final String KEY_STAGED_FILE = "staged_remote_file.txt";
+    
+    @Override
+    protected void loadInternals(final File nodeInternDir, final ExecutionMonitor exec)
+            throws IOException, CanceledExecutionException {
+        super.loadInternals(nodeInternDir, exec);
+        File stagedFile = new File(nodeInternDir, KEY_STAGED_FILE);
+        if( stagedFile.exists() ) 
+            m_stagedRemoteFile = new String(Files.readAllBytes(stagedFile.toPath()), 
+                                            StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    protected void saveInternals(final File nodeInternDir, final ExecutionMonitor exec)
+            throws IOException, CanceledExecutionException {
+        super.saveInternals(nodeInternDir, exec);
+        if( m_stagedRemoteFile != null ) 
+            Files.write(new File(nodeInternDir, KEY_STAGED_FILE).toPath(), 
+                        m_stagedRemoteFile.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Remove the file uploaded by sftp from the remote exchange dir in the
+     * background, reset and dispose must not wait for the network. The local
+     * copy is removed in finalize.
+     */
+    private void removeStagedFile() {
+        if( m_stagedRemoteFile == null ) return;
+        m_stagedRemoval = SSHExecutionHelper.removeRemoteFileLater(m_sshConfiguration, 
+                                                                   m_stagedRemoteFile);
+        m_stagedRemoteFile = null;
+    }
+    
+    private void awaitStagedFileRemoval(final ExecutionMonitor exec) 
+            throws CanceledExecutionException, InterruptedException, ExecutionException {
+        Future<?> removal = m_stagedRemoval;
+        if( removal == null ) return;
+        while( true ) {
+            try {
+                removal.get(500, TimeUnit.MILLISECONDS);
+                break;
+            } catch(TimeoutException e) {
+                exec.checkCanceled();
+            }
+        }
+        m_stagedRemoval = null;
+    }
+    
     @Override
     public void finalize() {
         if( tmpExchangeFile != null ) tmpExchangeFile.delete();
     }
     
+    /**
+     * @return path of tmpExchangeFile on the remote host, commands executed 
+     *         locally read the staged file directly.
+     */
+    private String getRemoteFile() {
+        if( m_Settings.isSftpStaging() && m_sshConfiguration.isLocal() )
+            return tmpExchangeFile.getAbsolutePath();
+        
+        return replaceVars(m_Settings.getRemoteExchangeDir() + "/" + tmpExchangeFile.getName());
+    }
+
     private String replaceVars(String txt) {
         Collection<FlowVariable> vars = getAvailableInputFlowVariables().values();
         for(FlowVariable var : vars) {
@@ -22,6 +22,8 @@
 */
 package com.genentech.knime.commandLine;
 
+import java.io.File;
+
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
@@ -40,17 +42,30 @@ public class KnimeSDFCMDBridgeSettings {
     static final String CFG_LOCAL_EX_DIR  = "localEDir";
     static final String CFG_REMOTE_EX_DIR = "remoteEDir";
     static final String CFG_MYSUB_OPTS    = "mysubOpts";
+    static final String CFG_SFTP_STAGING  = "sftpStaging";
     private final String m_StructCol;
     private final String m_localExchangeDir;
     private final String m_remoteExchangeDir;
     private final String m_mySubOptions;
+    private final boolean m_sftpStaging;
     
     public KnimeSDFCMDBridgeSettings(String structColumn, 
             String localExchangeDir, String remoteExchangeDir, String mysubOptions)
+    {   this(structColumn, localExchangeDir, remoteExchangeDir, mysubOptions, false);
+    }
+    
+    /**
+     * @param sftpStaging if true the input is uploaded to the remote exchange
+     *        directory by sftp instead of being written to the local exchange
+     *        directory shared with the remote host.
+     */
+    public KnimeSDFCMDBridgeSettings(String structColumn, String localExchangeDir, 
+            String remoteExchangeDir, String mysubOptions, boolean sftpStaging)
     {   this.m_StructCol = structColumn;
         this.m_localExchangeDir = localExchangeDir;
         this.m_remoteExchangeDir = remoteExchangeDir;
         this.m_mySubOptions = mysubOptions;
+        this.m_sftpStaging = sftpStaging;
     }
     
     
@@ -70,14 +85,19 @@ public class KnimeSDFCMDBridgeSettings {
 		return m_mySubOptions;
 	}
 
+    public boolean isSftpStaging() {
+        return m_sftpStaging;
+    }
+
     public static KnimeSDFCMDBridgeSettings loadFromModel(final NodeSettingsRO settings)
             throws InvalidSettingsException {
         String structCol = settings.getString(CFG_STRUCT_COL);
         String lDir = settings.getString(CFG_LOCAL_EX_DIR);
         String rDir = settings.getString(CFG_REMOTE_EX_DIR);
         String mOpt = settings.getString(CFG_MYSUB_OPTS, Settings.getMysubOptions());
+        boolean sftp = settings.getBoolean(CFG_SFTP_STAGING, false);
 
-        return new KnimeSDFCMDBridgeSettings(structCol, lDir, rDir, mOpt);
+        return new KnimeSDFCMDBridgeSettings(structCol, lDir, rDir, mOpt, sftp);
     }
 
     public static KnimeSDFCMDBridgeSettings loadFromDialog(final NodeSettingsRO settings) {
@@ -93,7 +113,12 @@ public class KnimeSDFCMDBridgeSettings {
         String mOpt = Settings.getMysubOptions();
         mOpt = settings.getString(CFG_MYSUB_OPTS, mOpt);
 
-        return new KnimeSDFCMDBridgeSettings(structCol, lDir, rDir, mOpt);
+        // new nodes stage by sftp if the exchange directory is not mounted here
+        boolean sftp = Settings.getExchangeLocalDir() == null 
+                    || ! new File(Settings.getExchangeLocalDir()).isDirectory();
+        sftp = settings.getBoolean(CFG_SFTP_STAGING, sftp);
+
+        return new KnimeSDFCMDBridgeSettings(structCol, lDir, rDir, mOpt, sftp);
     }
 
     public static void validateSettings(final NodeSettingsRO settings)
@@ -102,7 +127,7 @@ public class KnimeSDFCMDBridgeSettings {
         KnimeSDFCMDBridgeSettings kSet = loadFromDialog(settings);
         
         String lsDir = kSet.getLocalExchangeDir();
-        if( lsDir == null )
+        if( lsDir == null && ! kSet.isSftpStaging() )
             throw new InvalidSettingsException(
                     "Cannot access local exchange directory: " + lsDir);
         
@@ -120,5 +145,6 @@ public class KnimeSDFCMDBridgeSettings {
         settings.addString(CFG_LOCAL_EX_DIR, getLocalExchangeDir());
         settings.addString(CFG_REMOTE_EX_DIR, getRemoteExchangeDir());
         settings.addString(CFG_MYSUB_OPTS, getMysubOptions());
+        settings.addBoolean(CFG_SFTP_STAGING, isSftpStaging());
 	}
 }
@@ -24,10 +24,13 @@ package com.genentech.knime.commandLine;
 
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
@@ -64,6 +67,8 @@ public class KnimeSDFCmdBridgeSettingsPanel extends JPanel {
     private final JTextField m_lExchangeDir = new JTextField(25);
     private final JTextField m_rExchangeDir = new JTextField(25);
     private final JTextField m_mysubOptions = new JTextField(40);
+    private final JCheckBox m_sftpStaging = 
+            new JCheckBox("Upload by sftp (no local exchange directory needed)");
 
     /**
      * Creates a new tab.
@@ -93,6 +98,21 @@ public class KnimeSDFCmdBridgeSettingsPanel extends JPanel {
 
         optBox.add(tmpBox);
 
+        //////////////////////////////////////////////////////
+        tmpBox = Box.createHorizontalBox();
+        tmpBox.add(Box.createRigidArea(five10));// horizontalStrut would expand
+        tmpBox.add(m_sftpStaging);
+        m_sftpStaging.setToolTipText(
+           "Transfer the input to the remote exchange directory by sftp, resuming after broken connections.");
+        m_sftpStaging.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                m_lExchangeDir.setEnabled(! m_sftpStaging.isSelected());
+            }
+        });
+        tmpBox.add(Box.createHorizontalGlue());
+        optBox.add(tmpBox);
+
         //////////////////////////////////////////////////////
         tmpBox = Box.createHorizontalBox();
         tmpBox.add(Box.createRigidArea(five10));// horizontalStrut would expand
@@ -185,6 +205,8 @@ public class KnimeSDFCmdBridgeSettingsPanel extends JPanel {
         m_lExchangeDir.setText(setting.getLocalExchangeDir());
         m_rExchangeDir.setText(setting.getRemoteExchangeDir());
         m_mysubOptions.setText(setting.getMysubOptions());
+        m_sftpStaging.setSelected(setting.isSftpStaging());
+        m_lExchangeDir.setEnabled(! setting.isSftpStaging());
      }
 
     /**
@@ -195,6 +217,7 @@ public class KnimeSDFCmdBridgeSettingsPanel extends JPanel {
      */
     public KnimeSDFCMDBridgeSettings saveSettings() {
         return new KnimeSDFCMDBridgeSettings(m_structCol.getSelectedColumn(),
-           m_lExchangeDir.getText(), m_rExchangeDir.getText(), m_mysubOptions.getText());
+           m_lExchangeDir.getText(), m_rExchangeDir.getText(), m_mysubOptions.getText(),
+           m_sftpStaging.isSelected());
     }
 }
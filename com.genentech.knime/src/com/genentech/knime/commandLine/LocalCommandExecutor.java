@@ -0,0 +1,181 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+
+import com.genentech.knime.ssh.ChannelCompletion;
+
+/**
+ * Executes commands as local process, e.g. if KNIME runs on a host on which
+ * the command line programs are installed. stdin, stdout and stderr are
+ * wired like those of an ssh exec channel.
+ *
+ * @author albertgo @ Genentech
+ */
+class LocalCommandExecutor extends CommandExecutor {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(LocalCommandExecutor.class);
+
+    /** longer scripts are written to a file, the length of an argument is limited */
+    private static final int MAX_COMMAND_LENGTH = 64 * 1024;
+
+    /** interval in which the cancel status and checks are evaluated */
+    private static final long CHECK_INTERVAL_MS = 100;
+
+    /** 
+     * starts the shell in a new session, making it leader of its process 
+     * group like a shell started by sshd, see {@link RemoteCancellation}
+     */
+    private static final File SETSID = new File("/usr/bin/setsid");
+
+    private static final File DEV_NULL = new File("/dev/null");
+
+
+    @Override
+    public int execute(final String script, final InputStream stdIn, final OutputStream stdOut,
+            final OutputStream stdErr, final ExecutionMonitor exec, 
+            final List<ChannelCompletion.Check> checks) throws Exception {
+        List<String> cmd = new ArrayList<String>();
+        if (SETSID.canExecute()) cmd.add(SETSID.getPath());
+        cmd.add("/bin/tcsh");
+        File scriptFile = null;
+        if (script.length() <= MAX_COMMAND_LENGTH) {
+            cmd.add("-fc");
+            cmd.add(script);
+        } else {
+            scriptFile = File.createTempFile("knimeCmd", ".csh");
+            Files.write(scriptFile.toPath(), (script + '\n').getBytes(StandardCharsets.UTF_8));
+            cmd.add("-f");
+            cmd.add(scriptFile.getPath());
+        }
+
+        try {
+            ProcessBuilder pb = new ProcessBuilder(cmd);
+            if (stdIn == null) pb.redirectInput(ProcessBuilder.Redirect.from(DEV_NULL));
+            LOGGER.debug("Starting local process");
+            m_started = false;
+            Process proc = pb.start();
+            m_started = true;
+
+            Pump out = new Pump("GNE-Local-Output", proc.getInputStream(), stdOut);
+            Pump err = new Pump("GNE-Local-Error", proc.getErrorStream(), stdErr);
+            if (stdIn != null) new Pump("GNE-Local-Input", stdIn, proc.getOutputStream());
+            try {
+                while (!proc.waitFor(CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    exec.checkCanceled();
+                    for (ChannelCompletion.Check c : checks)
+                        c.check();
+                }
+                out.join();
+                err.join();
+                out.checkFailed();
+                err.checkFailed();
+                // like with ssh stdin need not be read completely, the
+                // input pump ends with a broken pipe
+                return proc.exitValue();
+
+            } catch (Exception e) {
+                proc.destroy();
+                throw e;
+            }
+
+        } finally {
+            if (scriptFile != null) scriptFile.delete();
+        }
+    }
+
+
+    @Override
+    public void upload(final InputStream in, final String file) throws Exception {
+        File f = new File(file.startsWith("~/") 
+                          ? System.getProperty("user.home") + file.substring(1) : file);
+        f.getAbsoluteFile().getParentFile().mkdirs();
+        Files.copy(in, f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    @Override
+    public void upload(final File localFile, final String file, final boolean resume,
+            final ExecutionMonitor exec) throws Exception {
+        InputStream in = new FileInputStream(localFile);
+        try {
+            upload(in, file);
+        } finally {
+            in.close();
+        }
+        exec.checkCanceled();
+    }
+
+
+    /**
+     * Copies a stream of the process and closes the destination at the end.
+     */
+    private static class Pump extends Thread {
+        private final InputStream m_in;
+        private final OutputStream m_out;
+        private volatile IOException m_failure;
+
+        Pump(final String name, final InputStream in, final OutputStream out) {
+            super(name);
+            setDaemon(true);
+            m_in = in;
+            m_out = out;
+            start();
+        }
+
+        @Override
+        public void run() {
+            byte[] buf = new byte[64 * 1024];
+            try {
+                try {
+                    int len;
+                    while ((len = m_in.read(buf)) > 0)
+                        m_out.write(buf, 0, len);
+                } finally {
+                    m_out.close();
+                }
+            } catch (IOException e) {
+                m_failure = e;
+            }
+        }
+
+        void checkFailed() throws IOException {
+            IOException e = m_failure;
+            if (e != null) throw e;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Immutable plan of the unix pipe executing a {@link CommandObject} and its
+ * parents: program stages reading the output of their input plan,
+ * concatenations of several plans and redirections into a file.
+ *
+ * Plans of parent commands are shared by their children, see
+ * {@link CommandObject#getPipePlan()}. {@link #render(boolean)} writes the
+ * csh pipe in a single pass without recursion so that the time is linear
+ * in the length of the pipe.
+ *
+ * @author albertgo @ Genentech
+ */
+public abstract class PipePlan {
+
+    private static final String NEXT_INDENT = "   ";
+
+    private PipePlan() {}
+
+
+    /**
+     * @param input plan providing stdin of cmdLine, null for the first stage.
+     */
+    public static PipePlan stage(final PipePlan input, final String cmdLine) {
+        return new Stage(input, cmdLine);
+    }
+
+    /**
+     * @return plan writing the output of all inputs one after the other.
+     */
+    public static PipePlan concatenation(final List<PipePlan> inputs) {
+        return new Concatenation(inputs);
+    }
+
+    /**
+     * @return plan writing the output of input to file.
+     */
+    public static PipePlan redirect(final PipePlan input, final String file) {
+        return new Redirect(input, file);
+    }
+
+
+    /**
+     * Quote s as single argument for csh and sh.
+     */
+    public static String quote(final String s) {
+        return '\'' + s.replace("'", "'\\''") + '\'';
+    }
+
+
+    /**
+     * @param newLineAllowed if true the pipe is formatted with continuation
+     *        lines and indentation for display.
+     * @return the csh command line of this plan.
+     */
+    public String render(final boolean newLineAllowed) {
+        String sep = newLineAllowed ? "\\\n" : "";
+        String catSep = newLineAllowed ? ";\\\n" : " ; ";
+
+        StringBuilder sb = new StringBuilder(1024);
+        // items are either literal strings or plans with their indentation
+        Deque<Object> todo = new ArrayDeque<Object>();
+        Deque<String> indents = new ArrayDeque<String>();
+        todo.push(this);
+        indents.push("");
+        while (!todo.isEmpty()) {
+            Object item = todo.pop();
+            if (item instanceof String) {
+                sb.append((String) item);
+                continue;
+            }
+            String indent = indents.pop();
+
+            if (item instanceof Stage) {
+                Stage st = (Stage) item;
+                if (st.m_input == null) {
+                    sb.append(indent).append(st.m_cmdLine);
+                } else {
+                    todo.push(" " + sep + indent + NEXT_INDENT + "| " + st.m_cmdLine);
+                    push(todo, indents, st.m_input, indent);
+                }
+
+            } else if (item instanceof Redirect) {
+                Redirect r = (Redirect) item;
+                todo.push(" " + sep + indent + NEXT_INDENT + "> " + r.m_file);
+                push(todo, indents, r.m_input, indent);
+
+            } else {
+                List<PipePlan> inputs = ((Concatenation) item).m_inputs;
+                String childIndent = indent + NEXT_INDENT;
+                todo.push(sep + indent + ")");
+                for (int i = inputs.size() - 1; i >= 0; i--) {
+                    push(todo, indents, inputs.get(i), childIndent);
+                    if (i > 0) todo.push(catSep + indent + " ");
+                }
+                todo.push(indent + "( " + sep + " ");
+            }
+        }
+        return sb.toString();
+    }
+
+
+    private static void push(final Deque<Object> todo, final Deque<String> indents,
+            final PipePlan plan, final String indent) {
+        todo.push(plan);
+        indents.push(indent);
+    }
+
+
+    private static class Stage extends PipePlan {
+        private final PipePlan m_input;
+        private final String m_cmdLine;
+
+        private Stage(final PipePlan input, final String cmdLine) {
+            m_input = input;
+            m_cmdLine = cmdLine;
+        }
+    }
+
+    private static class Concatenation extends PipePlan {
+        private final List<PipePlan> m_inputs;
+
+        private Concatenation(final List<PipePlan> inputs) {
+            m_inputs = Collections.unmodifiableList(new ArrayList<PipePlan>(inputs));
+        }
+    }
+
+    private static class Redirect extends PipePlan {
+        private final PipePlan m_input;
+        private final String m_file;
+
+        private Redirect(final PipePlan input, final String file) {
+            m_input = input;
+            m_file = file;
+        }
+    }
+}
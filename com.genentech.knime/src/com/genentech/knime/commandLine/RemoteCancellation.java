@@ -0,0 +1,248 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+
+import com.genentech.knime.Settings;
+
+/**
+ * Stops the remote processes and cluster jobs of an execution when the node
+ * is canceled or fails while the remote command is still running. 
+ *
+ * Closing the exec channel does not stop the remote command: there is no
+ * terminal whose hangup would kill it and mysub.py keeps its cluster job
+ * alive. After the {@link CommandExecutor} signalled the command, 
+ * {@link #cancel()}
+ * <ul>
+ * <li>kills the process group of the remote shell, recorded by 
+ *     {@link #wrap(String)}. sshd starts the login shell in a new session, 
+ *     which is the group leader unless it execs the command.</li>
+ * <li>cancels the cluster jobs reported by mysub.py -printJobId with 
+ *     "mysub.py -cancel" (scancel or bkill)</li>
+ * <li>confirms that the processes and jobs are gone, processes still alive
+ *     after a grace period are killed. If the state can not be queried
+ *     they are reported as possibly still running.</li>
+ * </ul>
+ *
+ * @author albertgo @ Genentech
+ */
+public class RemoteCancellation {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(RemoteCancellation.class);
+
+    /** stderr lines of mysub.py -printJobId (slurm) and bsub -Is (lsf) */
+    private static final Pattern JOB_ID_RE 
+                = Pattern.compile("(?:mysub: job (\\d+)|Job <(\\d+)> is submitted)");
+
+    private static final int CONFIRM_ATTEMPTS = 5;
+    private static final long CONFIRM_INTERVAL_MS = 1000;
+    /** confirmations after which remaining processes are killed with SIGKILL */
+    private static final int KILL_AFTER = 2;
+
+    /** longest stderr line scanned for job ids */
+    private static final int MAX_LINE = 1000;
+
+    private SSHConfiguration m_sshConfig;
+    private final Set<String> m_jobIds = Collections.synchronizedSet(new LinkedHashSet<String>());
+    private String m_pidFile;
+
+
+    public RemoteCancellation(final SSHConfiguration sshConfig) {
+        m_sshConfig = sshConfig;
+    }
+
+
+    /**
+     * @return script which records the process group of the remote shell 
+     *         before executing script and removes it afterwards.
+     */
+    public String wrap(final String script) {
+        m_pidFile = SSHExecutionHelper.createRemoteScratchFile(".pid");
+        return "mkdir -p " + Settings.SSHRemoteScratchDir + "; "
+             + "ps -o pgid= -p $$ >! " + m_pidFile + "; "
+             + script + "; "
+             + "set knimeStatus = $status; rm -f " + m_pidFile + "; exit $knimeStatus";
+    }
+
+
+    /**
+     * Run the cancellation on host, the host of a host pool which executed 
+     * the command. The process group can only be killed there.
+     * 
+     * @param host null if not known
+     */
+    public void setHost(final String host) {
+        if (host != null) m_sshConfig = m_sshConfig.forHost(host);
+    }
+
+
+    /**
+     * Cluster job to be canceled, e.g. a detached job.
+     */
+    public void addJobId(final String jobId) {
+        m_jobIds.add(jobId);
+    }
+
+
+    /**
+     * @return stream writing to err which picks up the ids of cluster jobs
+     *         printed by mysub.py.
+     */
+    public OutputStream watch(final OutputStream err) {
+        return new FilterOutputStream(err) {
+            private final StringBuilder m_line = new StringBuilder();
+
+            @Override
+            public void write(final int b) throws IOException {
+                out.write(b);
+                scan(b);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                out.write(b, off, len);
+                for (int i = off; i < off + len; i++)
+                    scan(b[i]);
+            }
+
+            private void scan(final int b) {
+                if (b == '\n') {
+                    Matcher m = JOB_ID_RE.matcher(m_line);
+                    if (m.find()) {
+                        String id = m.group(1) != null ? m.group(1) : m.group(2);
+                        LOGGER.debug("Remote command submitted cluster job " + id);
+                        m_jobIds.add(id);
+                    }
+                    m_line.setLength(0);
+                } else if (m_line.length() < MAX_LINE) {
+                    m_line.append((char) b);
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Stop the remote command and its cluster jobs and wait for them to be gone.
+     * 
+     * Errors are logged and not thrown as this is called while handling
+     * the cancellation or failure of the node.
+     */
+    public void cancel() {
+        // the node's monitor is canceled already
+        ExecutionMonitor exec = new ExecutionMonitor();
+        String pgid = "";
+        if (m_pidFile != null) {
+            String out = run("if ( -e " + m_pidFile + " ) cat " + m_pidFile, exec);
+            if (out == null) 
+                LOGGER.warn("Could not read process group of remote command on " 
+                            + m_sshConfig.getRemoteHost() + ", it might still be running");
+            else if (out.trim().matches("\\d+")) 
+                pgid = out.trim();
+        }
+        if (!pgid.isEmpty()) 
+            run("/bin/kill -TERM -- -" + pgid, exec);
+
+        List<String> jobIds;
+        synchronized (m_jobIds) {
+            jobIds = new ArrayList<String>(m_jobIds);
+        }
+        if (!jobIds.isEmpty()) {
+            LOGGER.info("Canceling cluster jobs " + jobIds + " on " + m_sshConfig.getRemoteHost());
+            StringBuilder cmd = new StringBuilder("source ")
+                 .append(m_sshConfig.getInitScriptName()).append("; mysub.py -cancel");
+            for (String id : jobIds)
+                cmd.append(' ').append(id);
+            run(cmd.toString(), exec);
+        }
+
+        for (int i = 1; !pgid.isEmpty() || !jobIds.isEmpty(); i++) {
+            try {
+                Thread.sleep(CONFIRM_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            // kill -0 fails once no process of the group is left, if the
+            // check itself fails the state is unknown and checked again
+            if (!pgid.isEmpty()) {
+                String alive = run("/bin/kill -0 -- -" + pgid + " >& /dev/null && echo alive "
+                                   + "|| echo gone", exec);
+                if (alive != null && alive.trim().equals("gone")) pgid = "";
+            }
+            if (!pgid.isEmpty() && i >= KILL_AFTER)
+                run("/bin/kill -KILL -- -" + pgid, exec);
+
+            if (!jobIds.isEmpty()) {
+                try {
+                    Map<String, String> states = ClusterJobMonitor.queryStates(m_sshConfig, exec, false);
+                    List<String> running = new ArrayList<String>();
+                    for (String id : jobIds) {
+                        String state = states.get(id);
+                        if (state != null && !ClusterJobMonitor.isFinal(state)) running.add(id);
+                    }
+                    jobIds = running;
+                } catch (Exception e) {
+                    LOGGER.debug("Could not query cluster jobs: " + e.getMessage());
+                }
+            }
+
+            if (i >= CONFIRM_ATTEMPTS && (!pgid.isEmpty() || !jobIds.isEmpty())) {
+                LOGGER.warn(String.format("Remote command on %s might still be running: "
+                            + "process group %s, cluster jobs %s", 
+                            m_sshConfig.getRemoteHost(), pgid, jobIds));
+                break;
+            }
+        }
+        if (m_pidFile != null) run("rm -f " + m_pidFile, exec);
+    }
+
+
+    /**
+     * @return stdout of command, null if it failed.
+     */
+    private String run(final String command, final ExecutionMonitor exec) {
+        try {
+            // the canceled command may still hold the permit of the host
+            return SSHExecutionHelper.runCommand(m_sshConfig, command, exec, false);
+        } catch (Exception e) {
+            LOGGER.debug(e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+
+import com.genentech.knime.Settings;
+
+/**
+ * Content addressed store for the input of ssh commands on the remote host.
+ *
+ * Inputs are stored in a remote directory under the SHA-256 of their content.
+ * Before an input is sent the remote host is asked for its hash, so an input
+ * used by several executions, e.g. re-runs, loops or several consumers of
+ * one bridged table, is uploaded once. The command then reads its stdin from
+ * the stored file. Uploads go to a temp file which is only moved into the
+ * store after its checksum was verified on the remote host.
+ *
+ * The hash of temp files written by this plugin, e.g. the stdout of a 
+ * previous command, is computed while they are written, see 
+ * {@link #hashWhileWriting(File, OutputStream)}. Other files, e.g. those 
+ * written by the KNIME SDF writer, are read once more to compute it.
+ *
+ * Stored inputs are touched when used. Inputs not used for
+ * {@link Settings#INPUTStoreMaxDays} and the least recently used inputs above
+ * {@link Settings#INPUTStoreMaxSizeMB} are removed, at most once per
+ * {@link #GC_INTERVAL_MS} and host. Uploads in progress and the input being
+ * staged are never removed, detached cluster jobs read a link to their input
+ * in their spool directory, see {@link #getLinkCommand(String, String)}.
+ *
+ * The store is enabled by the inputStore element in commandLinePrograms.xml.
+ *
+ * @author albertgo @ Genentech
+ */
+public class RemoteInputStore {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(RemoteInputStore.class);
+
+    /** smaller inputs are streamed, the lookup would take longer than the upload */
+    public static final long MIN_STORE_BYTES = 256 * 1024;
+
+    private static final long GC_INTERVAL_MS = 3600L * 1000;
+
+    /** number of local files whose hash is remembered */
+    private static final int MAX_HASHES = 1000;
+
+    private static final RemoteInputStore DEFAULT = Settings.INPUTStoreDir == null ? null
+            : new RemoteInputStore(Settings.INPUTStoreDir, Settings.INPUTStoreMaxSizeMB << 20,
+                                   Settings.INPUTStoreMaxDays);
+
+    private final String m_dir;
+    private final long m_maxBytes;
+    private final int m_maxDays;
+
+    /** path, length and modification time of local files to their hash */
+    private final Map<String, String> m_hashes = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+            return size() > MAX_HASHES;
+        }
+    };
+
+    /** user@host to the time of the last garbage collection */
+    private final Map<String, Long> m_lastGC = new HashMap<String, Long>();
+
+
+    public RemoteInputStore(final String dir, final long maxBytes, final int maxDays) {
+        m_dir = dir;
+        m_maxBytes = maxBytes;
+        m_maxDays = maxDays;
+    }
+
+
+    /**
+     * @return the store configured in commandLinePrograms.xml or null if
+     *         inputs are not stored.
+     */
+    public static RemoteInputStore getDefault() {
+        return DEFAULT;
+    }
+
+
+    /**
+     * @return out or, if inputs are stored, a stream computing the hash of 
+     *         the content written to file while it is written. The hash is
+     *         remembered when the stream is closed and file is not read 
+     *         again when it is staged.
+     */
+    public static OutputStream hashWhileWriting(final File file, final OutputStream out) {
+        final RemoteInputStore store = DEFAULT;
+        if (store == null) return out;
+
+        return new DigestOutputStream(out, createDigest()) {
+            private boolean m_closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (m_closed) return;
+                m_closed = true;
+                super.close();
+                store.putHash(file, toHex(getMessageDigest().digest()));
+            }
+        };
+    }
+
+
+    /**
+     * @return true if remoteFile is an input in this store.
+     */
+    public boolean isStored(final String remoteFile) {
+        return remoteFile != null && remoteFile.startsWith(m_dir + "/");
+    }
+
+
+    /**
+     * The garbage collection may remove a stored input while a cluster job 
+     * reading it is still queued. The job reads a hard link instead, or a 
+     * copy if the link cannot be created, e.g. across file systems.
+     * 
+     * @return tcsh command creating target as link to the stored input.
+     */
+    public String getLinkCommand(final String stored, final String target) {
+        return "ln -f " + stored + " " + target + " >& /dev/null || cp -f " + stored + " " + target;
+    }
+
+
+    /**
+     * @return true if inFile should be read from the store when executing
+     *         with sshConfig.
+     */
+    public boolean accepts(final SSHConfiguration sshConfig, final File inFile) {
+        return !sshConfig.isLocal() && inFile.length() >= MIN_STORE_BYTES;
+    }
+
+
+    /**
+     * Make sure the content of inFile is in the store, uploading it if the
+     * remote host does not have it yet.
+     *
+     * @return path of the stored input on the remote host or null if the
+     *         store could not be used, the input should then be streamed.
+     */
+    public String stage(final SSHConfiguration sshConfig, final File inFile,
+            final ExecutionMonitor exec) throws CanceledExecutionException {
+        try {
+            exec.setMessage("Looking up input on " + sshConfig.getRemoteHost());
+            String hash = getHash(inFile);
+            String stored = m_dir + "/" + hash;
+
+            String found = SSHExecutionHelper.runCommand(sshConfig, getGCCommand(sshConfig, hash)
+                    + "if ( -f " + hash + " ) echo found; touch -c " + hash, exec).trim();
+            if (found.endsWith("found")) {
+                LOGGER.debug("Input " + inFile.getName() + " is stored as " + stored);
+                return stored;
+            }
+
+            String tmp = hash + "." + UUID.randomUUID() + ".tmp";
+            SSHExecutionHelper.uploadResuming(sshConfig, inFile, m_dir + "/" + tmp, exec);
+
+            exec.setMessage("Verifying input on " + sshConfig.getRemoteHost());
+            String verified = SSHExecutionHelper.runCommand(sshConfig, "cd " + m_dir + "; "
+                    + "echo \"" + hash + "  " + tmp + "\" | sha256sum -c --status && mv -f " 
+                    + tmp + " " + hash + " && echo verified; rm -f " + tmp, exec).trim();
+            if (!verified.endsWith("verified")) {
+                LOGGER.warn("Checksum of uploaded input " + inFile.getName() 
+                            + " does not match, streaming it instead");
+                return null;
+            }
+            LOGGER.debug("Stored input " + inFile.getName() + " as " + stored);
+            return stored;
+
+        } catch (CanceledExecutionException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.warn("Could not use remote input store: " + e.getMessage());
+            return null;
+        }
+    }
+
+
+    /**
+     * @param keep hash of the input being staged, it is not removed.
+     * @return commands entering the store directory, removing expired and
+     *         least recently used inputs if this was not done recently.
+     */
+    private String getGCCommand(final SSHConfiguration sshConfig, final String keep) {
+        String cmd = "mkdir -p " + m_dir + "; cd " + m_dir + "; ";
+
+        String host = sshConfig.getUser() + "@" + sshConfig.getRemoteHost();
+        long now = System.currentTimeMillis();
+        synchronized (m_lastGC) {
+            Long last = m_lastGC.get(host);
+            if (last != null && now - last < GC_INTERVAL_MS) return cmd;
+            m_lastGC.put(host, now);
+        }
+
+        // stored inputs are named by their hash only, uploads in progress 
+        // (hash.uuid.tmp) are left alone unless they are abandoned for maxDays.
+        // ls -t lists the most recently used first, older ones above the limit are removed
+        return cmd + "find . -maxdepth 1 -type f -mtime +" + m_maxDays + " ! -name " + keep 
+                   + " -delete >& /dev/null; "
+                   + "ls -lt | awk -v keep=" + keep + " -v max=" + m_maxBytes 
+                   + " 'NR==1 || $9 == keep || $9 ~ /[.]/ {next} {s+=$5; if (s>max) print $9}' "
+                   + "| xargs rm -f >& /dev/null; ";
+    }
+
+
+    /**
+     * @return hex encoded SHA-256 of the content of inFile, computed once per
+     *         version of the file unless it was computed while writing it.
+     */
+    String getHash(final File inFile) throws IOException {
+        String fileKey = getFileKey(inFile);
+        synchronized (m_hashes) {
+            String hash = m_hashes.get(fileKey);
+            if (hash != null) return hash;
+        }
+
+        // not written by this plugin
+        MessageDigest md = createDigest();
+        InputStream in = new FileInputStream(inFile);
+        try {
+            byte[] buf = new byte[64 * 1024];
+            int len;
+            while ((len = in.read(buf)) > 0)
+                md.update(buf, 0, len);
+        } finally {
+            in.close();
+        }
+
+        String hash = toHex(md.digest());
+        putHash(inFile, hash);
+        return hash;
+    }
+
+
+    private void putHash(final File file, final String hash) {
+        synchronized (m_hashes) {
+            m_hashes.put(getFileKey(file), hash);
+        }
+    }
+
+
+    private static String getFileKey(final File file) {
+        return file.getAbsolutePath() + '\n' + file.length() + '\n' + file.lastModified();
+    }
+
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static String toHex(final byte[] digest) {
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest)
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+}
@@ -37,27 +37,13 @@ public class RemoteWriterCmdObject extends CommandObject {
         super(parentCommand, userOptions, mysubOptions, progDefinition);
     }
 
-    protected String getCSHPipe(boolean newLineAllowed, String indent ) {
-        String cmdSeparator = "\\\n";
-        String nextIndent = "   ";
-        if( ! newLineAllowed ) {
-            cmdSeparator = "";
-        }
-        
-        List<CommandObject> parentCommands = getParentCmdObjectList();
-
+    @Override
+    protected PipePlan createPipePlan(final List<PipePlan> inputs) {
         // only user options for RemoteWrite as command itself is "cat" 
         // and only used for single execution
-        String cmdLine = "> " + getUserOptions();  
-
-        if (parentCommands.size() == 1)
-            return parentCommands.get(0).getCSHPipe(newLineAllowed, indent) 
-                + " " + cmdSeparator + indent + nextIndent + cmdLine;
-
-        assert false : "commandWriter should have single input port: " 
+        assert inputs.size() == 1 : "commandWriter should have single input port: " 
                       + getProgramDefintion().getName();
-        // only known node with multiple parents is concatenate which overrides this method
-        
-        return null;
+
+        return PipePlan.redirect(inputs.get(0), getUserOptions());
     }
 }
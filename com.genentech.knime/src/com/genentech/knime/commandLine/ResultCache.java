@@ -0,0 +1,363 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.knime.core.node.NodeLogger;
+
+import com.genentech.knime.Settings;
+
+/**
+ * Local disk cache for the stdout and stderr of remote command executions.
+ *
+ * Entries are keyed by the SHA-256 of the complete remote command line
+ * (pipe, mysub options, flow variables, init script and working directory),
+ * the host and user and the content of the input file. Only successful
+ * executions are stored. When the total size exceeds the configured limit
+ * the least recently used entries are removed.
+ *
+ * The cache is enabled by the resultCache element in commandLinePrograms.xml.
+ * Commands whose output does not only depend on their command line and input
+ * are excluded with {@link CMDProgramDefinition#isCacheable()}.
+ *
+ * @author albertgo @ Genentech
+ */
+public class ResultCache {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(ResultCache.class);
+
+    private static final String OUT_SUFFIX = ".out";
+    private static final String ERR_SUFFIX = ".err";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** temp files older than this are left over from aborted executions */
+    private static final long TMP_MAX_AGE_MS = 24L * 3600 * 1000;
+
+    private static final ResultCache DEFAULT = Settings.RESULTCacheDir == null ? null
+            : new ResultCache(new File(Settings.RESULTCacheDir), Settings.RESULTCacheMaxSizeMB << 20);
+
+    private final File m_dir;
+    private final long m_maxBytes;
+
+
+    public ResultCache(final File dir, final long maxBytes) {
+        m_dir = dir;
+        m_maxBytes = maxBytes;
+    }
+
+
+    /**
+     * @return the cache configured in commandLinePrograms.xml or null if
+     *         caching is disabled.
+     */
+    public static ResultCache getDefault() {
+        return DEFAULT;
+    }
+
+
+    /**
+     * @param wholePipe if true all commands feeding into cmdObj must be
+     *        cacheable as well.
+     */
+    public static boolean isCacheable(final CommandObject cmdObj, final boolean wholePipe) {
+        if (!cmdObj.getProgramDefintion().isCacheable()) return false;
+        if (!wholePipe) return true;
+
+        for (CommandObject parent : cmdObj.getParentCmdObjectList())
+            if (!isCacheable(parent, true)) return false;
+        return true;
+    }
+
+
+    /**
+     * @param inFile input of the command, may be null.
+     * @return hex encoded key for an execution of cmd.
+     */
+    public static String createKey(final String host, final String user,
+            final String cmd, final File inFile) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String s : new String[] { host, user, cmd }) {
+            md.update(s.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+        }
+
+        if (inFile != null) {
+            InputStream in = new FileInputStream(inFile);
+            try {
+                byte[] buf = new byte[64 * 1024];
+                int len;
+                while ((len = in.read(buf)) > 0)
+                    md.update(buf, 0, len);
+            } finally {
+                in.close();
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : md.digest())
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+
+    /**
+     * Look up a cached execution.
+     *
+     * @param stdOut if not null the cached stdout is written to this stream
+     *        which is then closed, otherwise it is copied to a new temp file.
+     * @return null if key is not in the cache.
+     */
+    public SSHExecutionResult get(final String key, final OutputStream stdOut) throws IOException {
+        File out = new File(m_dir, key + OUT_SUFFIX);
+        File err = new File(m_dir, key + ERR_SUFFIX);
+        if (!out.isFile() || !err.isFile()) return null;
+
+        // mark as recently used
+        long now = System.currentTimeMillis();
+        out.setLastModified(now);
+        err.setLastModified(now);
+
+        // open both before anything is written so that an entry evicted
+        // by another process in the meantime is treated as a miss
+        InputStream outIn;
+        InputStream errIn;
+        try {
+            errIn = new FileInputStream(err);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            outIn = new FileInputStream(out);
+        } catch (FileNotFoundException e) {
+            errIn.close();
+            return null;
+        }
+
+        File tmpOutFile = null;
+        File tmpErrFile = null;
+        try {
+            tmpErrFile = File.createTempFile("SDFCmdNodeOutputTable", ".txt");
+            Files.copy(errIn, tmpErrFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (stdOut != null) {
+                try {
+                    copy(outIn, stdOut);
+                } finally {
+                    stdOut.close();
+                }
+            } else {
+                tmpOutFile = File.createTempFile("SDFCmdNodeOutputTable", ".sdf");
+                Files.copy(outIn, tmpOutFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            if (tmpErrFile != null) tmpErrFile.delete();
+            if (tmpOutFile != null) tmpOutFile.delete();
+            throw e;
+        } finally {
+            outIn.close();
+            errIn.close();
+        }
+
+        LOGGER.info("Using cached result " + key);
+        return new SSHExecutionResult(0, tmpOutFile, tmpErrFile);
+    }
+
+
+    private static void copy(final InputStream in, final OutputStream out) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        int len;
+        while ((len = in.read(buf)) > 0)
+            out.write(buf, 0, len);
+    }
+
+
+    /**
+     * @return stream that writes to out and to a temp file in the cache
+     *         directory which is stored with {@link Tee#commit(File)}.
+     */
+    public Tee tee(final String key, final OutputStream out) throws IOException {
+        m_dir.mkdirs();
+        return new Tee(key, out, File.createTempFile(key, TMP_SUFFIX, m_dir));
+    }
+
+
+    /**
+     * Store a copy of the stdout and stderr of a successful execution.
+     */
+    public void put(final String key, final File stdOut, final File stdErr) {
+        try {
+            m_dir.mkdirs();
+            File tmp = File.createTempFile(key, TMP_SUFFIX, m_dir);
+            Files.copy(stdOut.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            store(key, tmp, stdErr);
+        } catch (IOException e) {
+            LOGGER.warn("Could not store result in cache: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * @param tmpOut temp file in the cache directory, it is moved into the cache.
+     */
+    private void store(final String key, final File tmpOut, final File stdErr) throws IOException {
+        try {
+            File tmpErr = File.createTempFile(key, TMP_SUFFIX, m_dir);
+            try {
+                Files.copy(stdErr.toPath(), tmpErr.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                // stdout is moved last so that an entry is only visible when complete
+                Files.move(tmpErr.toPath(), new File(m_dir, key + ERR_SUFFIX).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(tmpOut.toPath(), new File(m_dir, key + OUT_SUFFIX).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tmpErr.delete();
+            }
+        } finally {
+            tmpOut.delete();
+        }
+        evict();
+    }
+
+
+    /**
+     * Remove least recently used entries until the cache is below its size limit.
+     */
+    private synchronized void evict() {
+        File[] files = m_dir.listFiles();
+        if (files == null) return;
+
+        long total = 0;
+        long tmpLimit = System.currentTimeMillis() - TMP_MAX_AGE_MS;
+        List<File> outFiles = new ArrayList<File>();
+        for (File f : files) {
+            if (f.getName().endsWith(TMP_SUFFIX) && f.lastModified() < tmpLimit) {
+                f.delete();
+                continue;
+            }
+            total += f.length();
+            if (f.getName().endsWith(OUT_SUFFIX)) outFiles.add(f);
+        }
+        if (total <= m_maxBytes) return;
+
+        final long[] lastUsed = new long[outFiles.size()];
+        File[] byAge = outFiles.toArray(new File[outFiles.size()]);
+        for (int i = 0; i < byAge.length; i++)
+            lastUsed[i] = byAge[i].lastModified();
+        Integer[] idx = new Integer[byAge.length];
+        for (int i = 0; i < idx.length; i++) idx[i] = i;
+        Arrays.sort(idx, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer i1, final Integer i2) {
+                return Long.compare(lastUsed[i1], lastUsed[i2]);
+            }
+        });
+
+        for (int i = 0; i < idx.length && total > m_maxBytes; i++) {
+            File out = byAge[idx[i]];
+            String name = out.getName();
+            File err = new File(m_dir, name.substring(0, name.length() - OUT_SUFFIX.length()) + ERR_SUFFIX);
+            total -= out.length() + err.length();
+            out.delete();
+            err.delete();
+        }
+        LOGGER.debug("Evicted result cache entries, size is now " + (total >> 20) + "MB");
+    }
+
+
+    /**
+     * Stream which keeps a copy of everything written for storing it in the cache.
+     */
+    public class Tee extends FilterOutputStream {
+        private final String m_key;
+        private final File m_copy;
+        private final OutputStream m_copyStrm;
+
+        private Tee(final String key, final OutputStream out, final File copy) throws IOException {
+            super(out);
+            m_key = key;
+            m_copy = copy;
+            m_copyStrm = new FileOutputStream(copy);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            m_copyStrm.write(b, off, len);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            m_copyStrm.write(b);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                m_copyStrm.close();
+            }
+        }
+
+        /**
+         * Store the data written to this stream together with stdErr in the cache.
+         * Must be called after the stream was closed.
+         */
+        public void commit(final File stdErr) {
+            try {
+                store(m_key, m_copy, stdErr);
+            } catch (IOException e) {
+                LOGGER.warn("Could not store result in cache: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Discard the copy, e.g. if the execution failed.
+         */
+        public void discard() {
+            m_copy.delete();
+        }
+    }
+}
@@ -24,6 +24,7 @@ package com.genentech.knime.commandLine;
 
 import java.awt.GridLayout;
 
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
@@ -48,8 +49,11 @@ public class SDFCmdExecutorNodeDialog extends NodeDialogPane {
 	
 	private JTextField m_unixCommand = new JTextField(25);
 	private JTextField m_mysubOptions = new JTextField(30);
+	private JCheckBox m_streamOutput = new JCheckBox(
+	        "Build table while the output arrives (structure column \"Molecule\", own column types)");
 	final static String UNIX_KEY = "outUnixCmdVarTag";
 	final static String MYSUB_KEY = "mysubTag";
+	final static String STREAM_KEY = "streamOutput";
 
     /**
      * New pane for configuring SDFCmdExecutor node.
@@ -75,6 +79,7 @@ public class SDFCmdExecutorNodeDialog extends NodeDialogPane {
         
         final JPanel p = new JPanel(new GridLayout(2, 1));
         p.add(unixPanel);
+        p.add(m_streamOutput);
         addTab("Options", p);
         
     }
@@ -82,11 +87,13 @@ public class SDFCmdExecutorNodeDialog extends NodeDialogPane {
     @Override
     protected void loadSettingsFrom(NodeSettingsRO settings, PortObjectSpec[] specs) throws NotConfigurableException {
     	m_unixCommand.setText(settings.getString(UNIX_KEY, ""));
+    	m_streamOutput.setSelected(settings.getBoolean(STREAM_KEY, false));
     }
     
     @Override
     protected void saveSettingsTo(NodeSettingsWO settings) throws InvalidSettingsException {
     	settings.addString(UNIX_KEY,  m_unixCommand.getText());
+    	settings.addBoolean(STREAM_KEY, m_streamOutput.isSelected());
     }
 }
 
@@ -23,6 +23,7 @@
 package com.genentech.knime.commandLine;
 
 import java.io.File;
+import java.io.OutputStream;
 
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.ExecutionContext;
@@ -33,6 +34,9 @@ import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import com.genentech.knime.Settings;
+import com.genentech.knime.ssh.PipedOutputConsumer;
+
 /**
  * This is the model implementation of SDFCmdExecutor. 
  * Compile and execute the unix command
@@ -43,6 +47,8 @@ public class SDFCmdExecutorNodeModel extends AbstractCommandNodeModel {
 
    private final static String UNIX_DFT = "unixPipe";
    private String m_outUnixCmdName = UNIX_DFT;   
+   /** build the table while the output arrives, see {@link Settings#SSHStreamOutput} */
+   private boolean m_streamOutput = false;
 
    /**
     * Constructor for the node model.
@@ -63,11 +69,26 @@ public class SDFCmdExecutorNodeModel extends AbstractCommandNodeModel {
            return new PortObject[]{object.getTable()};
        }
        File tmpFile = File.createTempFile("SDFCmd_", ".sdf");
-       SSHExecutionResult sshRes = runSSHExecute(spec, exec, tmpFile);
+       BufferedDataTable outTable;
+       if (m_streamOutput && Settings.SSHStreamOutput) {
+           // table is built while the output arrives, it has its own column layout
+           PipedOutputConsumer<BufferedDataTable> parser = SDFTableBuilder.createConsumer(exec, true);
+           OutputStream stdOut = parser.start();
+           try {
+               runSSHExecute(spec, exec, tmpFile, stdOut);
+           } finally {
+               stdOut.close();
+               tmpFile.delete();
+           }
+           outTable = parser.join();
 
-       BufferedDataTable outTable = SDFCmdPortObject.getTable(sshRes.getStdOut());
-       sshRes.getStdOut().delete();
-       tmpFile.delete();
+       } else {
+           SSHExecutionResult sshRes = runSSHExecute(spec, exec, tmpFile);
+   
+           outTable = SDFCmdPortObject.getTable(sshRes.getStdOut());
+           sshRes.getStdOut().delete();
+           tmpFile.delete();
+       }
        return new PortObject[] {outTable};
    }
 
@@ -77,6 +98,9 @@ public class SDFCmdExecutorNodeModel extends AbstractCommandNodeModel {
          throws InvalidSettingsException {
        SDFCmdPortObjectSpec spec = (SDFCmdPortObjectSpec) inSpecs[0];
        pushFlowVariable(spec);
+       if (m_streamOutput && !Settings.SSHStreamOutput)
+           setWarningMessage("Building the table while the output arrives is disabled by "
+                    + "streamOutput in commandLinePrograms.xml, the KNIME SDF reader is used");
        return new PortObjectSpec[]{null};
    }
    
@@ -91,6 +115,7 @@ public class SDFCmdExecutorNodeModel extends AbstractCommandNodeModel {
    @Override
    protected void saveSettingsTo(final NodeSettingsWO settings) {
       settings.addString(SDFCmdExecutorNodeDialog.UNIX_KEY, m_outUnixCmdName);
+      settings.addBoolean(SDFCmdExecutorNodeDialog.STREAM_KEY, m_streamOutput);
    }
    
    /**
@@ -100,6 +125,8 @@ public class SDFCmdExecutorNodeModel extends AbstractCommandNodeModel {
    protected void loadValidatedSettingsFrom(final NodeSettingsRO settings)
          throws InvalidSettingsException {
       m_outUnixCmdName = settings.getString(SDFCmdExecutorNodeDialog.UNIX_KEY, UNIX_DFT);
+      // older nodes read their output with the KNIME SDF reader
+      m_streamOutput = settings.getBoolean(SDFCmdExecutorNodeDialog.STREAM_KEY, false);
    }
 
    /**
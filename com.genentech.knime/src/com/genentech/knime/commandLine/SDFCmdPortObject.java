@@ -22,11 +22,14 @@
 */
 package com.genentech.knime.commandLine;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.zip.ZipEntry;
@@ -84,7 +87,10 @@ public class SDFCmdPortObject implements PortObject {
     
     private final SDFCmdPortObjectSpec m_spec;
     
-    private final File m_sdfTempFile;
+    private File m_sdfTempFile;
+    
+    /** intermediate result on the remote host, see {@link SSHConfiguration#isRemoteIntermediates()} */
+    private final String m_remoteFile;
     
     private BufferedDataTable m_table;
     
@@ -96,9 +102,26 @@ public class SDFCmdPortObject implements PortObject {
     public SDFCmdPortObject(final SDFCmdPortObjectSpec spec, final File sdfTempFile) {
         m_spec = spec;
         m_sdfTempFile = sdfTempFile; 
+        m_remoteFile = null;
+    }
+    
+    private SDFCmdPortObject(final SDFCmdPortObjectSpec spec, final String remoteFile) {
+        m_spec = spec;
+        m_sdfTempFile = null; 
+        m_remoteFile = remoteFile;
+    }
+    
+    /**
+     * @param remoteFile path of the sdf file on the remote host. It is only
+     *        downloaded if {@link #getSDFile()} or {@link #getTable()} is called.
+     */
+    public static SDFCmdPortObject createRemote(final SDFCmdPortObjectSpec spec, 
+            final String remoteFile) {
+        return new SDFCmdPortObject(spec, remoteFile);
     }
     
     private static String KEY_SDF_FILE = "KEY_SDF_FILE";
+    private static String KEY_REMOTE_FILE = "KEY_REMOTE_FILE";
 
     
     
@@ -110,6 +133,14 @@ public class SDFCmdPortObject implements PortObject {
                 final PortObjectZipOutputStream out,
                 final ExecutionMonitor exec)
                 throws IOException, CanceledExecutionException {
+            if (portObject.m_remoteFile != null) {
+                // only the reference is saved, the file is removed from the
+                // remote host after Settings.SSHRemoteScratchMaxDays
+                out.putNextEntry(new ZipEntry(KEY_REMOTE_FILE));
+                out.write(portObject.m_remoteFile.getBytes(StandardCharsets.UTF_8));
+                out.close();
+                return;
+            }
             ZipEntry ze = new ZipEntry(KEY_SDF_FILE);
             out.putNextEntry(ze);
             save(portObject, out);
@@ -124,6 +155,12 @@ public class SDFCmdPortObject implements PortObject {
                 final ExecutionMonitor exec)
                 throws IOException, CanceledExecutionException {
             ZipEntry ze = in.getNextEntry();
+            if (ze.getName().equals(KEY_REMOTE_FILE)) {
+                ByteArrayOutputStream path = new ByteArrayOutputStream();
+                FileUtil.copy(in, path);
+                return createRemote((SDFCmdPortObjectSpec) spec, 
+                                    new String(path.toByteArray(), StandardCharsets.UTF_8));
+            }
             if (!ze.getName().equals(KEY_SDF_FILE)) {
                 throw new IOException("Key \"" + ze.getName() + "\" does not "
                         + " match expected zip entry name \"" 
@@ -155,7 +192,13 @@ public class SDFCmdPortObject implements PortObject {
         final File tmpFile;
         if (spec.getSSHConfiguration().isExecuteSSH()) {
             tmpFile = File.createTempFile("SDFCmd_", ".sdf");
-            FileUtil.copy(in, new FileOutputStream(tmpFile));
+            OutputStream out = RemoteInputStore.hashWhileWriting(tmpFile, 
+                                                                 new FileOutputStream(tmpFile));
+            try {
+                FileUtil.copy(in, out);
+            } finally {
+                out.close();
+            }
         } else {
             tmpFile = null;
         }
@@ -172,9 +215,46 @@ public class SDFCmdPortObject implements PortObject {
         return m_spec;
     }
     
-    public File getSDFile() {
+    /**
+     * @return the local sdf file, it is downloaded first if this holds a
+     *         remote file.
+     */
+    public File getSDFile() throws IOException {
+        return getSDFile(new ExecutionMonitor());
+    }
+    
+    /**
+     * @see #getSDFile()
+     */
+    public synchronized File getSDFile(final ExecutionMonitor exec) throws IOException {
+        if (m_sdfTempFile == null && m_remoteFile != null) {
+            File tmpFile = File.createTempFile("SDFCmd_", ".sdf");
+            try {
+                SSHExecutionHelper.download(m_spec.getSSHConfiguration(), m_remoteFile, tmpFile, exec);
+            } catch (Exception e) {
+                tmpFile.delete();
+                throw new IOException(String.format(
+                        "Could not download %s, re-execute the upstream nodes: %s", 
+                        m_remoteFile, e.getMessage()), e);
+            }
+            m_sdfTempFile = tmpFile;
+        }
         return m_sdfTempFile;
     }
+    
+    /**
+     * @return true if the sdf data is in a file on the remote host.
+     */
+    public boolean isRemote() {
+        return m_remoteFile != null;
+    }
+    
+    /**
+     * @return path of the sdf file on the remote host or null.
+     */
+    public String getRemoteFile() {
+        return m_remoteFile;
+    }
 
     @Override
     public JComponent[] getViews() {
@@ -203,7 +283,7 @@ public class SDFCmdPortObject implements PortObject {
         if (m_table != null) {
             return m_table;
         }
-        m_table = getTable(m_sdfTempFile);
+        m_table = getTable(getSDFile());
         return m_table;
     }
     
@@ -25,8 +25,12 @@ package com.genentech.knime.commandLine;
 import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 
 import javax.swing.BorderFactory;
@@ -63,15 +67,16 @@ public class SDFCmdPortObjectSpec implements PortObjectSpec {
     private final SSHConfiguration m_SSHConfiguration;
     
     public SDFCmdPortObjectSpec(final CommandObject command, final SSHConfiguration sshConfig) {
-        m_commandObject = command;
+        m_commandObject = CommandObject.intern(command);
         m_SSHConfiguration = sshConfig;
     }
     
     public SDFCmdPortObjectSpec(final SDFCmdPortObjectSpec parentSpec, final CommandObject command) {
         CMDProgramDefinition pdef = command.getProgramDefintion();
-        m_commandObject = pdef.createCommandObject(parentSpec.m_commandObject, 
-                                                     command.getUserOptions(), command.getMysubOptions() );
+        m_commandObject = CommandObject.intern(pdef.createCommandObject(parentSpec.m_commandObject, 
+                                                     command.getUserOptions(), command.getMysubOptions()));
         m_SSHConfiguration = parentSpec.getSSHConfiguration();
+        SharedPipeRegistry.register(m_commandObject);
     }
     
     public SDFCmdPortObjectSpec(final SDFCmdPortObjectSpec[] parentSpecs, final CommandObject command) {
@@ -84,8 +89,9 @@ public class SDFCmdPortObjectSpec implements PortObjectSpec {
             parentCommands.add(parentSpecs[i].m_commandObject);
         }
         CMDProgramDefinition pdef = command.getProgramDefintion();
-        m_commandObject = pdef.createCommandObject(parentCommands,
-                                                   command.getUserOptions(), command.getMysubOptions()); 
+        m_commandObject = CommandObject.intern(pdef.createCommandObject(parentCommands,
+                                                   command.getUserOptions(), command.getMysubOptions())); 
+        SharedPipeRegistry.register(m_commandObject);
         // only takes the SSH configuration from the first port
         m_SSHConfiguration = parentSpecs[0].getSSHConfiguration();
     }
@@ -141,6 +147,8 @@ public class SDFCmdPortObjectSpec implements PortObjectSpec {
     
     private static final String KEY_SDF_COMMAND_SETTINGS = "SDF_COMMAND_SETTINGS";
     private static final String KEY_SSH_CONFIGURATION = "SSH_CONFIGURATION";
+    private static final String KEY_NODE_TABLE = "nodeTable";
+    private static final String KEY_NODE_COUNT = "nodeCount";
     
     private static SDFCmdPortObjectSpec load(
             final PortObjectSpecZipInputStream is) throws IOException {
@@ -163,7 +171,9 @@ public class SDFCmdPortObjectSpec implements PortObjectSpec {
         NodeSettingsRO sshSettings = NodeSettings.loadFromXML(
                 new NonClosableInputStream.Zip(is));
         try {
-            CommandObject command = load(sdfSettings);
+            CommandObject command = sdfSettings.containsKey(KEY_NODE_TABLE) 
+                        ? loadTable(sdfSettings.getNodeSettings(KEY_NODE_TABLE))
+                        : load(sdfSettings);
             SSHConfiguration sshConfig = SSHConfiguration.loadFromModel(sshSettings);
             return new SDFCmdPortObjectSpec(command, sshConfig);
         } catch (InvalidSettingsException ise) {
@@ -171,6 +181,43 @@ public class SDFCmdPortObjectSpec implements PortObjectSpec {
         }
     }
     
+    /**
+     * Load the format written by {@link #saveTable(NodeSettingsWO, CommandObject)}.
+     */
+    private static CommandObject loadTable(final NodeSettingsRO table) throws InvalidSettingsException {
+        int nNodes = table.getInt(KEY_NODE_COUNT);
+        if (nNodes < 1) 
+            throw new InvalidSettingsException("Empty command table");
+        
+        CommandObject[] nodes = new CommandObject[nNodes];
+        for (int i = 0; i < nNodes; i++) {
+            NodeSettingsRO node = table.getNodeSettings(Integer.toString(i));
+            List<CommandObject> parents = new ArrayList<CommandObject>();
+            for (int p : node.getIntArray("parents")) {
+                if (p < 0 || p >= i) 
+                    throw new InvalidSettingsException("Invalid parent " + p + " of command " + i);
+                parents.add(nodes[p]);
+            }
+            CMDProgramDefinition progDefinition = 
+                        getDefinition(node.getString("progDefinitionName"));
+            nodes[i] = CommandObject.intern(progDefinition.createCommandObject(parents, 
+                        node.getString("userOptions"), node.getString("mysubOptions")));
+        }
+        return nodes[nNodes - 1];
+    }
+    
+    private static CMDProgramDefinition getDefinition(final String progDefinitionName) {
+        try {
+            return CommandList.DEFAULT.getDefinition(progDefinitionName);
+        } catch( NoClassDefFoundError e)
+        {   LOGGER.error(String.format("Error trying to load %s\n", progDefinitionName));
+            throw e;
+        }
+    }
+    
+    /**
+     * Load the nested format of previous versions.
+     */
     private static CommandObject load(final NodeSettingsRO settings) throws InvalidSettingsException {
         List<CommandObject> commands = new ArrayList<CommandObject>();
         String[] names = settings.getStringArray("names");
@@ -192,14 +239,9 @@ public class SDFCmdPortObjectSpec implements PortObjectSpec {
         
         
         
-        CMDProgramDefinition progDefinition;
-        try {
-            progDefinition = CommandList.DEFAULT.getDefinition(progDefinitionName);
-        } catch( NoClassDefFoundError e)
-        {   LOGGER.error(String.format("Error trying to load %s\n", progDefinitionName));
-            throw e;
-        }
-        return progDefinition.createCommandObject(commands, userOptions, mysubOptions);
+        CMDProgramDefinition progDefinition = getDefinition(progDefinitionName);
+        return CommandObject.intern(
+                    progDefinition.createCommandObject(commands, userOptions, mysubOptions));
     }
     
     private static void save(final PortObjectSpecZipOutputStream os, 
@@ -209,7 +251,7 @@ public class SDFCmdPortObjectSpec implements PortObjectSpec {
         os.putNextEntry(ze);
         CommandObject command = portObjectSpec.getCommandObject(); 
         NodeSettingsWO settings = new NodeSettings(KEY_SDF_COMMAND_SETTINGS);
-        save(settings, command);
+        saveTable(settings, command);
         ((NodeSettings) settings).saveToXML(new NonClosableOutputStream.Zip(os));
         ze.clone();
         // save SSH configuration
@@ -223,20 +265,55 @@ public class SDFCmdPortObjectSpec implements PortObjectSpec {
         os.close();
     }
     
-    private static void save(final NodeSettingsWO settings, final CommandObject command) {
-        settings.addString("userOptions", command.getUserOptions());
-        settings.addString("mysubOptions", command.getMysubOptions());
-        settings.addString("progDefinitionName", command.getProgramDefintion().getName());
-        List<CommandObject> list = command.getParentCmdObjectList();
-        ArrayList<String> names = new ArrayList<String>(list.size());
-        int parentNum = 0;
-        for (CommandObject co : list) {
-            String name = co.getProgramDefintion().getName() + '\t' + parentNum++;
-            names.add(name);
-            NodeSettingsWO subSettings = settings.addNodeSettings(name);// if two parents have the same name e.g. sdfTagTool.csh only one key is saved because name is used as key into settings object
-            save(subSettings, co);
+    /**
+     * Save command and its ancestry as flat table of distinct commands.
+     * 
+     * Parents are listed before their children, each command refers to its
+     * parents by their index and the last entry is command.
+     * The nested format is still read but no longer written, workflows saved
+     * with this format cannot be opened by plugin versions before 1.0.43.
+     */
+    private static void saveTable(final NodeSettingsWO settings, final CommandObject command) {
+        List<CommandObject> nodes = new ArrayList<CommandObject>();
+        Map<CommandObject, Integer> index = new HashMap<CommandObject, Integer>();
+        
+        // iterative post order traversal, long pipes would overflow the stack
+        Deque<CommandObject> stack = new ArrayDeque<CommandObject>();
+        stack.push(command);
+        while (!stack.isEmpty()) {
+            CommandObject co = stack.peek();
+            if (index.containsKey(co)) {
+                stack.pop();
+                continue;
+            }
+            boolean parentsDone = true;
+            for (CommandObject parent : co.getParentCmdObjectList()) {
+                if (!index.containsKey(parent)) {
+                    stack.push(parent);
+                    parentsDone = false;
+                }
+            }
+            if (parentsDone) {
+                stack.pop();
+                index.put(co, nodes.size());
+                nodes.add(co);
+            }
+        }
+        
+        NodeSettingsWO table = settings.addNodeSettings(KEY_NODE_TABLE);
+        table.addInt(KEY_NODE_COUNT, nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            CommandObject co = nodes.get(i);
+            NodeSettingsWO node = table.addNodeSettings(Integer.toString(i));
+            node.addString("userOptions", co.getUserOptions());
+            node.addString("mysubOptions", co.getMysubOptions());
+            node.addString("progDefinitionName", co.getProgramDefintion().getName());
+            List<CommandObject> parents = co.getParentCmdObjectList();
+            int[] parentIdx = new int[parents.size()];
+            for (int p = 0; p < parentIdx.length; p++)
+                parentIdx[p] = index.get(parents.get(p));
+            node.addIntArray("parents", parentIdx);
         }
-        settings.addStringArray("names", names.toArray(new String[names.size()]));
     }
 
 }
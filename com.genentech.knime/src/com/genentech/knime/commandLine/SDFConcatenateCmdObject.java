@@ -49,28 +49,8 @@ public class SDFConcatenateCmdObject extends CommandObject {
         super(parentCommands, userOptions, mysubOptions, progDefintion);
     }
 
-    protected String getCSHPipe(boolean newLineAllowed, String indent ) {
-        
-        String cmdSeparator = "\\\n";
-        String catSeparator = ";\\\n";
-        String nextIndent = "   ";
-        if( ! newLineAllowed ) {
-            cmdSeparator = "";
-            catSeparator = " ; ";
-        }
-
-        List<CommandObject> parentCommands = getParentCmdObjectList();
-        
-        StringBuilder sb = new StringBuilder(2000);
-        sb.append(indent).append("( ").append(cmdSeparator).append(" ");
-
-        for (CommandObject co : parentCommands)
-            sb.append(co.getCSHPipe(newLineAllowed, indent + nextIndent))
-              .append(catSeparator).append(indent).append(" ");
-
-        sb.setLength(sb.length() - 1 - indent.length() - catSeparator.length());
-        sb.append(cmdSeparator).append(indent).append(")");
-
-        return sb.toString();
+    @Override
+    protected PipePlan createPipePlan(final List<PipePlan> inputs) {
+        return PipePlan.concatenation(inputs);
     }
 }
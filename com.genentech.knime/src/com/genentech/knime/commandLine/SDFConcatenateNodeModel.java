@@ -25,8 +25,19 @@ package com.genentech.knime.commandLine;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
@@ -35,13 +46,16 @@ import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
-import org.knime.core.util.FileUtil;
+import org.knime.core.node.workflow.FlowVariable;
 
 import com.genentech.knime.Settings;
 
 /**
  * This is the model implementation of "SDF Concatenate" node. 
  * 
+ * If executeSSH is enabled the pipes of all connected ports are executed
+ * concurrently and their outputs are appended in port order.
+ * 
  * @author Thomas Gabriel, KNIME.com AG, Zurich
  */
 public class SDFConcatenateNodeModel extends AbstractCommandNodeModel {
@@ -68,30 +82,7 @@ public class SDFConcatenateNodeModel extends AbstractCommandNodeModel {
        SDFCmdPortObjectSpec spec = ((SDFCmdPortObject) inPorts[0]).getSpec();
        final File outFile;
        if (spec.getSSHConfiguration().isExecuteSSH()) {
-           outFile = File.createTempFile("SDFCmd_", ".sdf");
-           FileOutputStream out = new FileOutputStream(outFile, true);
-           for (int i = 0; i < inPorts.length; i++) {
-               
-               PortObject po = inPorts[i];
-               
-               if (po != null) {
-                   SDFCmdPortObject port = (SDFCmdPortObject) po;
-                   final File sdfFile;
-                   
-                   if (port.getSpec().getSSHConfiguration().isExecuteSSH()) {
-                       sdfFile = port.getSDFile();
-                   
-                   } else {
-                       File tmpFile = File.createTempFile("SDFCmd_", ".sdf");
-                       SSHExecutionResult sshRes = runSSHExecute(port.getSpec(), exec, tmpFile);
-                       sdfFile = sshRes.getStdOut();
-                   }
-                   FileInputStream in = new FileInputStream(sdfFile);
-                   FileUtil.copy(in, out);
-                   
-                   sdfFile.delete();
-               }
-           }
+           outFile = concatenate(inPorts, exec);
        } else {
            outFile = null;
        }
@@ -111,6 +102,140 @@ public class SDFConcatenateNodeModel extends AbstractCommandNodeModel {
        return new PortObject[]{new SDFCmdPortObject(outSpec, outFile)};
    }
 
+   /**
+    * Evaluate all connected ports concurrently and append their sdf files
+    * in port order.
+    */
+   private File concatenate(final PortObject[] inPorts, final ExecutionContext exec) 
+           throws Exception {
+       final Collection<FlowVariable> vars = getAvailableInputFlowVariables().values();
+       final List<Segment> segments = new ArrayList<Segment>();
+       List<Callable<Segment>> tasks = new ArrayList<Callable<Segment>>();
+       for (PortObject po : inPorts) {
+           if (po == null) continue;
+           
+           final SDFCmdPortObject port = (SDFCmdPortObject) po;
+           final Segment seg = new Segment();
+           final ExecutionContext subExec = exec.createSubExecutionContext(0);
+           segments.add(seg);
+           tasks.add(new Callable<Segment>() {
+               @Override
+               public Segment call() throws Exception {
+                   if (port.getSpec().getSSHConfiguration().isExecuteSSH()) {
+                       // upstream file, might need to be downloaded
+                       seg.m_sdfFile = port.getSDFile(subExec);
+                   } else {
+                       seg.m_result = SSHExecutionHelper.execute(port.getSpec(), vars, subExec, null);
+                       seg.m_sdfFile = seg.m_result.getStdOut();
+                   }
+                   return seg;
+               }
+           });
+       }
+       
+       ExecutorService pool = Executors.newFixedThreadPool(tasks.size(), new ThreadFactory() {
+           private int m_count = 0;
+
+           @Override
+           public synchronized Thread newThread(final Runnable r) {
+               Thread t = new Thread(r, "GNE-SDF-Concatenate-" + m_count++);
+               t.setDaemon(true);
+               return t;
+           }
+       });
+       try {
+           List<Future<Segment>> futures = new ArrayList<Future<Segment>>();
+           for (Callable<Segment> task : tasks)
+               futures.add(pool.submit(task));
+           
+           exec.setMessage("Executing " + tasks.size() + " pipes");
+           for (Future<Segment> f : futures) {
+               while (true) {
+                   exec.checkCanceled();
+                   try {
+                       f.get(100, TimeUnit.MILLISECONDS);
+                       break;
+                   } catch (TimeoutException e) {
+                       // check cancel status
+                   } catch (ExecutionException e) {
+                       if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+                       throw e;
+                   }
+               }
+           }
+           
+           return merge(segments);
+           
+       } finally {
+           pool.shutdownNow();
+           for (Segment seg : segments) 
+               seg.delete();
+       }
+   }
+   
+   
+   /**
+    * Append the sdf files of all segments to a new file and concatenate the
+    * stderr of the executed commands into the error output of this node.
+    */
+   private File merge(final List<Segment> segments) throws IOException {
+       File outFile = File.createTempFile("SDFCmd_", ".sdf");
+       File errFile = File.createTempFile("SDFCmdNodeOutputTable", ".txt");
+       int status = 0;
+       
+       FileOutputStream out = new FileOutputStream(outFile);
+       FileOutputStream err = new FileOutputStream(errFile);
+       try {
+           for (Segment seg : segments) {
+               append(seg.m_sdfFile, out.getChannel());
+               if (seg.m_result != null) {
+                   append(seg.m_result.getStdErr(), err.getChannel());
+                   if (status == 0) status = seg.m_result.getStatus();
+               }
+           }
+       } catch (IOException e) {
+           out.close();
+           outFile.delete();
+           throw e;
+       } finally {
+           out.close();
+           err.close();
+       }
+       processResult(new SSHExecutionResult(status, null, errFile));
+       return outFile;
+   }
+   
+   
+   private static void append(final File f, final FileChannel out) throws IOException {
+       if (f == null) return;
+       
+       FileInputStream in = new FileInputStream(f);
+       try {
+           FileChannel ch = in.getChannel();
+           long pos = 0;
+           long size = ch.size();
+           while (pos < size)
+               pos += ch.transferTo(pos, size - pos, out);
+       } finally {
+           in.close();
+       }
+   }
+   
+   
+   /** output of one input port */
+   private static class Segment {
+       private volatile File m_sdfFile;
+       /** result of the command if it was executed by this node */
+       private volatile SSHExecutionResult m_result;
+       
+       /** delete files created by this node, upstream files belong to their port */
+       private void delete() {
+           if (m_result == null) return;
+           if (m_result.getStdOut() != null) m_result.getStdOut().delete();
+           if (m_result.getStdErr() != null) m_result.getStdErr().delete();
+       }
+   }
+
    /** {@inheritDoc} */
    @Override
    protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs)
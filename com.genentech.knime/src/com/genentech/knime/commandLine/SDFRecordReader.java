@@ -0,0 +1,77 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits an SDF stream into records on the $$$$ separator lines.
+ *
+ * Records are returned as soon as their separator line has been read so that
+ * a stream can be processed while it is still being written.
+ *
+ * @author albertgo @ Genentech
+ */
+public class SDFRecordReader implements Closeable {
+
+    private final BufferedReader m_in;
+    private final StringBuilder m_rec = new StringBuilder(4096);
+
+
+    public SDFRecordReader(final InputStream in) {
+        m_in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+
+    /**
+     * @return the next record without the $$$$ line, lines separated by '\n',
+     *         or null at the end of the stream.
+     */
+    public String next() throws IOException {
+        m_rec.setLength(0);
+        String line;
+        while ((line = m_in.readLine()) != null) {
+            if (line.startsWith("$$$$")) {
+                return m_rec.toString();
+            }
+            m_rec.append(line).append('\n');
+        }
+
+        // last record might be missing the $$$$ line
+        for (int i = 0; i < m_rec.length(); i++)
+            if (!Character.isWhitespace(m_rec.charAt(i)))
+                return m_rec.toString();
+        return null;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        m_in.close();
+    }
+}
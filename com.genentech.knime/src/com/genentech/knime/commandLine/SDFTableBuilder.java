@@ -0,0 +1,357 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.chem.types.MolCellFactory;
+import org.knime.chem.types.SdfCellFactory;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.container.AbstractCellFactory;
+import org.knime.core.data.container.ColumnRearranger;
+import org.knime.core.data.container.SingleCellFactory;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+
+import com.genentech.knime.ssh.PipedOutputConsumer;
+
+/**
+ * Builds a KNIME table from SDF records as they are read.
+ *
+ * The first column contains the structure, all SD properties become columns.
+ * Property columns are created when they are first seen: rows are written to
+ * a {@link BufferedDataContainer} until a record introduces a new property,
+ * then a new container with the extended spec is started. Property values
+ * are collected as strings while the type (int, double or string) of each
+ * column is tracked. {@link #build()} converts the columns to their final
+ * type and concatenates the segments.
+ *
+ * @author albertgo @ Genentech
+ */
+public class SDFTableBuilder {
+
+    /** name of the column containing the structure */
+    public static final String STRUCTURE_COLUMN = "Molecule";
+
+    private static final int TYPE_INT    = 0;
+    private static final int TYPE_DOUBLE = 1;
+    private static final int TYPE_STRING = 2;
+
+    private final ExecutionContext m_exec;
+    private final boolean m_molOnly;
+
+    private final Map<String, Integer> m_propIdx = new LinkedHashMap<String, Integer>();
+    private final List<String> m_colNames = new ArrayList<String>();
+    private final List<Integer> m_colTypes = new ArrayList<Integer>();
+
+    private final List<BufferedDataTable> m_segments = new ArrayList<BufferedDataTable>();
+    private BufferedDataContainer m_container;
+    private int m_containerProps = -1;
+    private long m_count = 0;
+
+
+    /**
+     * @param molOnly if true the structure column contains the molfile only
+     *        (MolCell), otherwise the complete sdf record (SdfCell).
+     */
+    public SDFTableBuilder(final ExecutionContext exec, final boolean molOnly) {
+        m_exec = exec;
+        m_molOnly = molOnly;
+    }
+
+
+    /**
+     * @return consumer which builds the table from an sdf stream, e.g. the
+     *         stdout of a remote command.
+     */
+    public static PipedOutputConsumer<BufferedDataTable> createConsumer(
+            final ExecutionContext exec, final boolean molOnly) {
+        return new PipedOutputConsumer<BufferedDataTable>("GNE-SDF-Parser",
+                new PipedOutputConsumer.Consumer<BufferedDataTable>() {
+                    @Override
+                    public BufferedDataTable read(final InputStream in) throws Exception {
+                        return new SDFTableBuilder(exec, molOnly).readAll(in);
+                    }
+                });
+    }
+
+
+    /**
+     * Add all records from in and build the table.
+     */
+    public BufferedDataTable readAll(final InputStream in)
+            throws IOException, CanceledExecutionException {
+        SDFRecordReader rdr = new SDFRecordReader(in);
+        try {
+            String rec;
+            while ((rec = rdr.next()) != null)
+                add(rec);
+        } finally {
+            rdr.close();
+        }
+        return build();
+    }
+
+
+    /**
+     * @return number of records added so far.
+     */
+    public long getRecordCount() {
+        return m_count;
+    }
+
+
+    /**
+     * Add one record as returned by {@link SDFRecordReader#next()}.
+     */
+    public void add(final String rec) throws CanceledExecutionException {
+        int molEnd = rec.indexOf("\nM  END");
+        molEnd = molEnd < 0 ? rec.indexOf("\n>") : rec.indexOf('\n', molEnd + 1);
+        if (molEnd < 0) molEnd = rec.length() - 1;
+
+        Map<String, String> props = parseProperties(rec, molEnd + 1);
+        for (String name : props.keySet()) {
+            if (!m_propIdx.containsKey(name)) {
+                m_propIdx.put(name, m_colNames.size());
+                m_colNames.add(STRUCTURE_COLUMN.equals(name) ? name + " (#1)" : name);
+                m_colTypes.add(TYPE_INT);
+            }
+        }
+        if (m_container == null || m_containerProps != m_colNames.size())
+            newSegment();
+
+        DataCell[] cells = new DataCell[m_colNames.size() + 1];
+        cells[0] = m_molOnly ? MolCellFactory.create(rec.substring(0, molEnd + 1))
+                             : SdfCellFactory.create(rec + "$$$$\n");
+        for (int i = 1; i < cells.length; i++)
+            cells[i] = DataType.getMissingCell();
+
+        for (Map.Entry<String, String> e : props.entrySet()) {
+            String val = e.getValue();
+            if (val.trim().length() == 0) continue;
+
+            int idx = m_propIdx.get(e.getKey());
+            cells[idx + 1] = new StringCell(val);
+            m_colTypes.set(idx, widenType(m_colTypes.get(idx), val.trim()));
+        }
+
+        m_container.addRowToTable(new DefaultRow(RowKey.createRowKey(m_count), cells));
+        m_count++;
+        if (m_count % 1000 == 0) {
+            m_exec.checkCanceled();
+            m_exec.setMessage("Read " + m_count + " records");
+        }
+    }
+
+
+    /**
+     * Close the current segment and return the table with all records added.
+     */
+    public BufferedDataTable build() throws CanceledExecutionException {
+        if (m_container == null) newSegment();
+        m_container.close();
+        m_segments.add(m_container.getTable());
+        m_container = null;
+
+        DataTableSpec finalSpec = createSpec(true);
+        BufferedDataTable[] tables = new BufferedDataTable[m_segments.size()];
+        for (int i = 0; i < tables.length; i++)
+            tables[i] = convertSegment(m_segments.get(i), finalSpec);
+
+        if (tables.length == 1) return tables[0];
+        return m_exec.createConcatenateTable(m_exec, tables);
+    }
+
+
+    private void newSegment() {
+        if (m_container != null) {
+            m_container.close();
+            if (m_container.size() > 0)
+                m_segments.add(m_container.getTable());
+        }
+        m_container = m_exec.createDataContainer(createSpec(false));
+        m_containerProps = m_colNames.size();
+    }
+
+
+    /**
+     * @param typed if false all property columns are string columns.
+     */
+    private DataTableSpec createSpec(final boolean typed) {
+        DataColumnSpec[] cols = new DataColumnSpec[m_colNames.size() + 1];
+        cols[0] = new DataColumnSpecCreator(STRUCTURE_COLUMN,
+                        m_molOnly ? MolCellFactory.TYPE : SdfCellFactory.TYPE).createSpec();
+        for (int i = 0; i < m_colNames.size(); i++) {
+            DataType type = typed ? getDataType(m_colTypes.get(i)) : StringCell.TYPE;
+            cols[i + 1] = new DataColumnSpecCreator(m_colNames.get(i), type).createSpec();
+        }
+        return new DataTableSpec(cols);
+    }
+
+
+    /**
+     * Convert string columns to their final type, add columns that did not
+     * exist when the segment was written and order columns as in finalSpec.
+     */
+    private BufferedDataTable convertSegment(final BufferedDataTable seg,
+            final DataTableSpec finalSpec) throws CanceledExecutionException {
+        DataTableSpec segSpec = seg.getDataTableSpec();
+        if (segSpec.equalStructure(finalSpec)) return seg;
+
+        ColumnRearranger rearranger = new ColumnRearranger(segSpec);
+        for (int i = 1; i < segSpec.getNumColumns(); i++) {
+            final int type = m_colTypes.get(i - 1);
+            if (type == TYPE_STRING) continue;
+
+            final int colIdx = i;
+            rearranger.replace(new SingleCellFactory(finalSpec.getColumnSpec(i)) {
+                @Override
+                public DataCell getCell(final DataRow row) {
+                    return convert(row.getCell(colIdx), type);
+                }
+            }, i);
+        }
+
+        int nNew = finalSpec.getNumColumns() - segSpec.getNumColumns();
+        if (nNew > 0) {
+            DataColumnSpec[] newCols = new DataColumnSpec[nNew];
+            for (int i = 0; i < nNew; i++)
+                newCols[i] = finalSpec.getColumnSpec(segSpec.getNumColumns() + i);
+            final DataCell[] missing = new DataCell[nNew];
+            for (int i = 0; i < nNew; i++)
+                missing[i] = DataType.getMissingCell();
+
+            rearranger.append(new AbstractCellFactory(newCols) {
+                @Override
+                public DataCell[] getCells(final DataRow row) {
+                    return missing;
+                }
+            });
+        }
+        return m_exec.createColumnRearrangeTable(seg, rearranger, m_exec.createSubProgress(0));
+    }
+
+
+    /**
+     * @param start offset of the first line after the molfile
+     * @return property names and values in the order they appear in rec.
+     */
+    private static Map<String, String> parseProperties(final String rec, final int start) {
+        Map<String, String> props = new LinkedHashMap<String, String>();
+        String name = null;
+        StringBuilder val = new StringBuilder();
+
+        int pos = start;
+        while (pos < rec.length()) {
+            int eol = rec.indexOf('\n', pos);
+            if (eol < 0) eol = rec.length();
+            String line = rec.substring(pos, eol);
+            pos = eol + 1;
+
+            if (name == null) {
+                if (line.startsWith(">")) {
+                    int s = line.indexOf('<');
+                    int e = s < 0 ? -1 : line.indexOf('>', s + 1);
+                    if (e > s) {
+                        name = line.substring(s + 1, e);
+                        val.setLength(0);
+                    }
+                }
+            } else if (line.trim().length() == 0) {
+                if (!props.containsKey(name)) props.put(name, val.toString());
+                name = null;
+            } else {
+                if (val.length() > 0) val.append('\n');
+                val.append(line);
+            }
+        }
+        if (name != null && !props.containsKey(name)) props.put(name, val.toString());
+
+        return props;
+    }
+
+
+    private static int widenType(final int type, final String val) {
+        if (type == TYPE_STRING) return type;
+        if (type == TYPE_INT) {
+            try {
+                Integer.parseInt(val);
+                return TYPE_INT;
+            } catch (NumberFormatException e) {
+                // try double
+            }
+        }
+        return isDouble(val) ? TYPE_DOUBLE : TYPE_STRING;
+    }
+
+
+    private static boolean isDouble(final String val) {
+        // Double.parseDouble() also accepts things like "1d" or hex numbers
+        for (int i = 0; i < val.length(); i++) {
+            char c = val.charAt(i);
+            if ((c < '0' || c > '9') && c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E')
+                return false;
+        }
+        try {
+            Double.parseDouble(val);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+
+    private static DataType getDataType(final int type) {
+        switch (type) {
+            case TYPE_INT:    return IntCell.TYPE;
+            case TYPE_DOUBLE: return DoubleCell.TYPE;
+            default:          return StringCell.TYPE;
+        }
+    }
+
+
+    private static DataCell convert(final DataCell cell, final int type) {
+        if (cell.isMissing()) return cell;
+
+        String val = ((StringCell) cell).getStringValue().trim();
+        if (type == TYPE_INT) return new IntCell(Integer.parseInt(val));
+        return new DoubleCell(Double.parseDouble(val));
+    }
+}
@@ -0,0 +1,344 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.knime.chem.types.CtabValue;
+import org.knime.chem.types.MolValue;
+import org.knime.chem.types.SdfValue;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Writes the rows of a KNIME table as SDF records to an {@link OutputStream},
+ * e.g. directly into an ssh channel while the remote command is running. 
+ * Files are written with the KNIME SDF writer.
+ *
+ * The structure column provides the molfile, it must contain Sdf, Mol or
+ * Ctab values. All other columns are written as SDF properties. Missing 
+ * structures are written as empty molfiles and missing values are omitted,
+ * as by the KNIME SDF writer with "add empty structures for missing" 
+ * enabled. SDFTableWriterTest compares the output with the KNIME SDF writer.
+ *
+ * Large tables are split into chunks of consecutive rows which are rendered
+ * into temp files by the tasks of a {@link ForkJoinPool}. The chunks are
+ * appended to the output in order with {@link FileChannel#transferTo} while
+ * the following chunks are rendered.
+ *
+ * @author albertgo @ Genentech
+ */
+public class SDFTableWriter {
+
+    private static final String EMPTY_MOL =
+        "\n  KNIME\n\n  0  0  0  0  0  0  0  0  0  0999 V2000\nM  END\n";
+
+    /** number of rows rendered by one task */
+    private static final int CHUNK_ROWS = 2000;
+
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+    private final int m_structIdx;
+    private final String[] m_colNames;
+
+
+    /**
+     * @param structCol name of the column containing the structures.
+     * @throws IOException if the column does not exist in spec or does not
+     *         contain Sdf, Mol or Ctab values.
+     */
+    public SDFTableWriter(final DataTableSpec spec, final String structCol)
+            throws IOException {
+        m_structIdx = spec.findColumnIndex(structCol);
+        if (m_structIdx < 0)
+            throw new IOException("Structure column not found in input: " + structCol);
+        if (!isSupported(spec, structCol))
+            throw new IOException(String.format("Structure column %s of type %s is not supported, "
+                    + "only Sdf, Mol and Ctab", structCol, spec.getColumnSpec(m_structIdx).getType()));
+
+        m_colNames = spec.getColumnNames();
+    }
+
+
+    /**
+     * @return true if structCol exists in spec and contains Sdf, Mol or Ctab 
+     *         values.
+     */
+    public static boolean isSupported(final DataTableSpec spec, final String structCol) {
+        int idx = spec.findColumnIndex(structCol);
+        if (idx < 0) return false;
+        DataType type = spec.getColumnSpec(idx).getType();
+        return type.isCompatible(SdfValue.class) || type.isCompatible(MolValue.class)
+            || type.isCompatible(CtabValue.class);
+    }
+
+
+    /**
+     * Write all rows of table to out and close out.
+     */
+    public void write(final BufferedDataTable table, final OutputStream out,
+            final ExecutionMonitor exec) throws IOException, CanceledExecutionException {
+        if (isParallel(table)) {
+            writeParallel(table, Channels.newChannel(out), exec);
+            return;
+        }
+
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        CloseableRowIterator it = table.iterator();
+        try {
+            long nRows = table.size();
+            long count = 0;
+            while (it.hasNext()) {
+                writeRow(it.next(), w);
+
+                if (++count % 1000 == 0) {
+                    exec.checkCanceled();
+                    if (nRows > 0)
+                        exec.setProgress(count / (double) nRows, "Wrote " + count + " records");
+                }
+            }
+            exec.checkCanceled();
+
+        } finally {
+            it.close();
+            w.close();
+        }
+    }
+
+
+    private static boolean isParallel(final BufferedDataTable table) {
+        return POOL.getParallelism() > 1 && table.size() > 2 * CHUNK_ROWS;
+    }
+
+
+    /**
+     * Render chunks of rows in parallel and append them to out in order,
+     * out is closed at the end.
+     */
+    private void writeParallel(final BufferedDataTable table, final WritableByteChannel out,
+            final ExecutionMonitor exec) throws IOException, CanceledExecutionException {
+        // limits the number of rows in memory and of chunk files on disk
+        int maxPending = 2 * POOL.getParallelism();
+        Deque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+        CloseableRowIterator it = table.iterator();
+        try {
+            double nRows = table.size();
+            long count = 0;
+            List<DataRow> rows = new ArrayList<DataRow>(CHUNK_ROWS);
+            while (it.hasNext()) {
+                rows.add(it.next());
+                if (rows.size() < CHUNK_ROWS && it.hasNext()) continue;
+
+                pending.add(POOL.submit(new RenderTask(rows)));
+                rows = new ArrayList<DataRow>(CHUNK_ROWS);
+
+                while (pending.size() >= maxPending || (!it.hasNext() && !pending.isEmpty())) {
+                    count += transfer(pending.poll(), out);
+                    exec.checkCanceled();
+                    exec.setProgress(count / nRows, "Wrote " + count + " records");
+                }
+                exec.checkCanceled();
+            }
+
+        } finally {
+            it.close();
+            out.close();
+
+            // running tasks are not interrupted, wait for them to remove their files
+            for (Future<Chunk> f : pending) {
+                try {
+                    f.get().m_file.delete();
+                } catch (Exception e) {
+                    // failed tasks have removed their file
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Append the chunk computed by f to out and delete its file.
+     *
+     * @return the number of rows in the chunk.
+     */
+    private static int transfer(final Future<Chunk> f, final WritableByteChannel out)
+            throws IOException {
+        Chunk chunk;
+        try {
+            chunk = f.get();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while writing SDF", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Error writing SDF: " + cause.getMessage(), cause);
+        }
+
+        try {
+            FileChannel in = FileChannel.open(chunk.m_file.toPath(), StandardOpenOption.READ);
+            try {
+                long size = in.size();
+                long pos = 0;
+                while (pos < size)
+                    pos += in.transferTo(pos, size - pos, out);
+            } finally {
+                in.close();
+            }
+        } finally {
+            chunk.m_file.delete();
+        }
+        return chunk.m_rows;
+    }
+
+
+    /** rendered rows */
+    private static class Chunk {
+        private final File m_file;
+        private final int m_rows;
+
+        private Chunk(final File file, final int rows) {
+            m_file = file;
+            m_rows = rows;
+        }
+    }
+
+
+    /** renders a list of rows into a temp file */
+    private class RenderTask implements Callable<Chunk> {
+        private final List<DataRow> m_rows;
+
+        private RenderTask(final List<DataRow> rows) {
+            m_rows = rows;
+        }
+
+        @Override
+        public Chunk call() throws IOException {
+            File tmp = File.createTempFile("SDFChunk_", ".sdf");
+            try {
+                Writer w = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(tmp), StandardCharsets.UTF_8), 1 << 16);
+                try {
+                    for (DataRow row : m_rows)
+                        writeRow(row, w);
+                } finally {
+                    w.close();
+                }
+            } catch (IOException e) {
+                tmp.delete();
+                throw e;
+            } catch (RuntimeException e) {
+                tmp.delete();
+                throw e;
+            }
+            return new Chunk(tmp, m_rows.size());
+        }
+    }
+
+
+    /**
+     * Write a single row as SDF record including the terminating $$$$ line.
+     */
+    public void writeRow(final DataRow row, final Writer out) throws IOException {
+        writeMolBlock(row.getCell(m_structIdx), out);
+
+        for (int i = 0; i < m_colNames.length; i++) {
+            if (i == m_structIdx) continue;
+
+            DataCell cell = row.getCell(i);
+            if (cell.isMissing()) continue;
+
+            String val = cell instanceof StringValue
+                    ? ((StringValue) cell).getStringValue() : cell.toString();
+            out.write("> <");
+            out.write(m_colNames[i]);
+            out.write(">\n");
+            out.write(val);
+            out.write("\n\n");
+        }
+        out.write("$$$$\n");
+    }
+
+
+    /**
+     * Write the molfile including any properties already contained in an sdf
+     * cell, without the terminating $$$$ and ending in a newline.
+     *
+     * Sdf and mol values are written directly from the string of the cell.
+     */
+    private static void writeMolBlock(final DataCell cell, final Writer out) throws IOException {
+        String mol;
+        int end;
+        if (cell.isMissing()) {
+            out.write(EMPTY_MOL);
+            return;
+
+        } else if (cell instanceof SdfValue) {
+            mol = ((SdfValue) cell).getSdfValue();
+            end = mol.lastIndexOf("$$$$");
+            if (end < 0) end = mol.length();
+
+        } else if (cell instanceof MolValue) {
+            mol = ((MolValue) cell).getMolValue();
+            end = mol.length();
+
+        } else if (cell instanceof CtabValue) {
+            mol = "\n  KNIME\n\n" + ((CtabValue) cell).getCtabValue();
+            end = mol.length();
+
+        } else {
+            throw new IOException("Unsupported structure: " + cell.getType());
+        }
+
+        // drop trailing empty lines, properties from an sdf cell need one
+        while (end > 0 && (mol.charAt(end - 1) == '\n' || mol.charAt(end - 1) == '\r'))
+            end--;
+        out.write(mol, 0, end);
+        out.write(mol.startsWith("M  END", end - 6) ? "\n" : "\n\n");
+    }
+}
@@ -0,0 +1,322 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+
+import com.genentech.knime.ssh.ChannelCompletion;
+import com.genentech.knime.ssh.SSHSessionPool;
+import com.genentech.knime.ssh.SSHUtil;
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpProgressMonitor;
+
+/**
+ * Executes commands in an exec channel of a session leased from the 
+ * {@link com.genentech.knime.ssh.SSHSessionPool}. Once the session and 
+ * with it the host of a host pool is known, executions wait for a permit of
+ * the {@link AdmissionController} of that host.
+ *
+ * Concurrent executions share sessions, each with its own channel. If the
+ * server refuses the channel the execution is retried on another session.
+ *
+ * @author albertgo @ Genentech
+ */
+class SSHCommandExecutor extends CommandExecutor {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(SSHCommandExecutor.class);
+
+    /** longer scripts are uploaded instead of being passed as command line */
+    private static final int MAX_COMMAND_LENGTH = 64 * 1024;
+
+    /** attempts to open a channel refused on a shared session */
+    private static final int CHANNEL_ATTEMPTS = 3;
+
+    private final SSHConfiguration m_sshConfig;
+    private final boolean m_compress;
+    private volatile String m_host;
+
+
+    SSHCommandExecutor(final SSHConfiguration sshConfig, final boolean compress) {
+        m_sshConfig = sshConfig;
+        m_compress = compress;
+    }
+
+
+    @Override
+    public int execute(final String script, final InputStream stdIn, final OutputStream stdOut,
+            final OutputStream stdErr, final ExecutionMonitor exec, 
+            final List<ChannelCompletion.Check> checks) throws Exception {
+        m_started = false;
+        for (int attempt = 1; ; attempt++) {
+            Session session = leaseSession();
+            AdmissionController admission;
+            try {
+                admission = isBypassAdmission() ? null 
+                          : AdmissionController.acquire(session.getHost(), session.getPort(), 
+                                        AdmissionController.getTenant(m_sshConfig), exec);
+            } catch (Exception e) {
+                SSHExecutionHelper.releaseSession(session);
+                throw e;
+            }
+            try {
+                return execute(session, script, stdIn, stdOut, stdErr, exec, checks);
+            } catch (ChannelRefusedException e) {
+                if (attempt >= CHANNEL_ATTEMPTS) throw (JSchException) e.getCause();
+                LOGGER.debug("Channel refused, retrying on another session");
+            } finally {
+                if (admission != null) admission.release();
+            }
+        }
+    }
+
+
+    private Session leaseSession() throws Exception {
+        Session session = SSHExecutionHelper.getConnectedSession(m_sshConfig, m_compress);
+        String user = m_sshConfig.getUser();
+        m_host = (user == null || user.trim().isEmpty() ? session.getUserName() + '@' : "")
+               + session.getHost();
+        return session;
+    }
+
+
+    /**
+     * Execute script in an exec channel of session which is released afterwards.
+     * 
+     * @throws ChannelRefusedException if the server refused the channel, 
+     *         nothing was executed.
+     */
+    private int execute(final Session session, final String script, final InputStream stdIn, 
+            final OutputStream stdOut, final OutputStream stdErr, final ExecutionMonitor exec, 
+            final List<ChannelCompletion.Check> checks) throws Exception {
+        ChannelExec execChannel = null;
+        boolean refused = false;
+        try {
+            LOGGER.debug("Opening Exec channel");
+            ChannelCompletion completion;
+            try {
+                execChannel = (ChannelExec) session.openChannel("exec");
+                execChannel.setCommand(toTcshCommand(session, script));
+                completion = new ChannelCompletion(execChannel);
+                for (ChannelCompletion.Check c : checks)
+                    completion.addCheck(c);
+                if (stdIn != null) execChannel.setInputStream(stdIn);
+                execChannel.setErrStream(completion.watch(stdErr));
+                execChannel.setOutputStream(completion.watch(stdOut));
+                // the command may start even if connect fails afterwards
+                m_started = true;
+                execChannel.connect(m_sshConfig.getTimeoutUSec());
+            } catch (JSchException e) {
+                if (!isChannelRefused(e)) throw e;
+                m_started = false;
+                refused = true;
+                throw new ChannelRefusedException(e);
+            }
+            try {
+                return completion.await(exec);
+            } catch (Exception e) {
+                // older sshd ignore signals, see RemoteCancellation
+                try {
+                    execChannel.sendSignal("TERM");
+                } catch (Exception se) {
+                    LOGGER.debug("Could not send signal: " + se.getMessage());
+                }
+                throw e;
+            }
+
+        } finally {
+            if (execChannel != null && execChannel.isConnected()) {
+                execChannel.disconnect();
+            }
+            if (refused)
+                SSHSessionPool.getDefault().channelRefused(session);
+            else
+                SSHExecutionHelper.releaseSession(session);
+        }
+    }
+
+
+    /** 
+     * @return true if the server did not open the channel, e.g. because of 
+     *         the MaxSessions limit of sshd, but the session is fine.
+     */
+    private static boolean isChannelRefused(final JSchException e) {
+        return e.getMessage() != null && e.getMessage().startsWith("channel is not opened");
+    }
+
+
+    /**
+     * The script is quoted once as argument of tcsh -fc. Scripts longer than
+     * {@link #MAX_COMMAND_LENGTH} are uploaded by sftp into the remote scratch
+     * directory and executed from there so that they are not limited by the
+     * maximum length of a command line on the remote host.
+     * 
+     * @return command executing script on the remote host.
+     */
+    private String toTcshCommand(final Session session, final String script) throws Exception {
+        if (script.length() <= MAX_COMMAND_LENGTH) {
+            return "/bin/tcsh -fc " + PipePlan.quote(script);
+        }
+
+        String remoteScript = SSHExecutionHelper.createRemoteScratchFile(".csh");
+        String body = script + "\n"
+                    + "set knimeStatus = $status\n"
+                    + "rm -f " + remoteScript + "\n"
+                    + "exit $knimeStatus\n";
+        LOGGER.debug("Uploading script of " + script.length() + " characters to " + remoteScript);
+        upload(session, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),
+               remoteScript);
+        return "/bin/tcsh -f " + remoteScript;
+    }
+
+
+    @Override
+    public void upload(final InputStream in, final String file) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            Session session = SSHExecutionHelper.getConnectedSession(m_sshConfig, m_compress);
+            try {
+                upload(session, in, file);
+            } catch (JSchException e) {
+                if (!isChannelRefused(e) || attempt >= CHANNEL_ATTEMPTS) {
+                    SSHExecutionHelper.releaseSession(session);
+                    throw e;
+                }
+                SSHSessionPool.getDefault().channelRefused(session);
+                continue;
+            }
+            SSHExecutionHelper.releaseSession(session);
+            return;
+        }
+    }
+
+
+    /**
+     * Jsch sends the write requests of a put without waiting for each 
+     * acknowledgement, in RESUME mode it skips the bytes already in file.
+     */
+    @Override
+    public void upload(final File localFile, final String file, final boolean resume,
+            final ExecutionMonitor exec) throws Exception {
+        Session session = SSHExecutionHelper.getConnectedSession(m_sshConfig, m_compress);
+        boolean refused = false;
+        try {
+            ChannelSftp sftp = (ChannelSftp) session.openChannel("sftp");
+            try {
+                try {
+                    sftp.connect(m_sshConfig.getTimeoutUSec());
+                } catch (JSchException e) {
+                    refused = isChannelRefused(e);
+                    throw e;
+                }
+                String path = toSftpPath(sftp, file);
+                final long total = Math.max(1, localFile.length());
+                sftp.put(localFile.getPath(), path, new SftpProgressMonitor() {
+                    private long m_done = 0;
+
+                    @Override
+                    public void init(final int op, final String src, final String dest, 
+                            final long max) {
+                        // nothing to do
+                    }
+
+                    @Override
+                    public boolean count(final long count) {
+                        m_done += count;
+                        exec.setProgress(Math.min(1.0, m_done / (double) total));
+                        try {
+                            exec.checkCanceled();
+                            return true;
+                        } catch (CanceledExecutionException e) {
+                            return false;
+                        }
+                    }
+
+                    @Override
+                    public void end() {
+                        // nothing to do
+                    }
+                }, resume ? ChannelSftp.RESUME : ChannelSftp.OVERWRITE);
+                // jsch stops without error when the monitor returns false
+                exec.checkCanceled();
+            } finally {
+                sftp.disconnect();
+            }
+        } finally {
+            if (refused)
+                SSHSessionPool.getDefault().channelRefused(session);
+            else
+                SSHExecutionHelper.releaseSession(session);
+        }
+    }
+
+
+    @Override
+    public String getHost() {
+        return m_host;
+    }
+
+
+    private void upload(final Session session, final InputStream in, final String file) 
+            throws Exception {
+        ChannelSftp sftp = (ChannelSftp) session.openChannel("sftp");
+        try {
+            sftp.connect(m_sshConfig.getTimeoutUSec());
+            sftp.put(in, toSftpPath(sftp, file));
+        } finally {
+            sftp.disconnect();
+        }
+    }
+
+
+    /**
+     * @return path of file for sftp whose parent directories exist.
+     */
+    private static String toSftpPath(final ChannelSftp sftp, final String file) throws Exception {
+        // sftp paths are relative to the home directory, ~ is not expanded
+        String path = file.startsWith("~/") ? file.substring(2) : file;
+        int dirEnd = path.lastIndexOf('/');
+        if (dirEnd > 0) SSHUtil.ftpMkdirs(sftp, path.substring(0, dirEnd));
+        return path;
+    }
+
+
+    /** the server refused to open a channel on a shared session */
+    private static final class ChannelRefusedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private ChannelRefusedException(final JSchException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+}
@@ -50,6 +50,9 @@
  */
 package com.genentech.knime.commandLine;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
@@ -73,6 +76,13 @@ public class SSHConfiguration {
     private static final String DEFAULTSshHost = Settings.SSHRemoteHost;
 
     private static final String DEFAULTRunMode = "prd";
+    
+    /** 
+     * host name selecting execution as local process, "localhost" is an ssh
+     * connection to the local machine like any other host.
+     */
+    public static final String LOCALHost = "local";
+
     private final String m_remoteHost;
 
     private final int m_portNumber;
@@ -94,10 +104,38 @@ public class SSHConfiguration {
     /** File to write error logs if requested */
     private final String m_errLogFile;
     
+    /** compression of stdin and stdout of the remote command */
+    private final TransportCompression m_compression;
+    
+    /** keep results of executeSSH nodes in the remote scratch directory */
+    private final boolean m_remoteIntermediates;
+    
+    /** submit background cluster jobs instead of holding an ssh channel */
+    private final boolean m_detached;
+    
 
     public SSHConfiguration( String remoteHost, int portNumber, String user, 
             String encryptPassword, String encryptKeyPassphrase, int timeoutSec,
             String workDirectory, String runMode, String errLogFile, boolean executeSSH )
+    {
+        this(remoteHost, portNumber, user, encryptPassword, encryptKeyPassphrase, timeoutSec,
+             workDirectory, runMode, errLogFile, executeSSH, TransportCompression.NONE, false);
+    }
+    
+    public SSHConfiguration( String remoteHost, int portNumber, String user, 
+            String encryptPassword, String encryptKeyPassphrase, int timeoutSec,
+            String workDirectory, String runMode, String errLogFile, boolean executeSSH,
+            TransportCompression compression, boolean remoteIntermediates )
+    {
+        this(remoteHost, portNumber, user, encryptPassword, encryptKeyPassphrase, timeoutSec,
+             workDirectory, runMode, errLogFile, executeSSH, compression, remoteIntermediates,
+             false);
+    }
+    
+    public SSHConfiguration( String remoteHost, int portNumber, String user, 
+            String encryptPassword, String encryptKeyPassphrase, int timeoutSec,
+            String workDirectory, String runMode, String errLogFile, boolean executeSSH,
+            TransportCompression compression, boolean remoteIntermediates, boolean detached )
     {
         m_remoteHost = remoteHost;
         m_portNumber = portNumber;
@@ -109,12 +147,38 @@ public class SSHConfiguration {
         m_runMode = runMode;
         m_errLogFile = errLogFile;
         m_executeSSH = executeSSH;
+        m_compression = compression;
+        m_remoteIntermediates = remoteIntermediates;
+        m_detached = detached;
         m_initScriptName = Settings.SSHInitFileTemplate.replaceAll("\\$mode", runMode);
     }
     
+    /** the host or a comma separated list of hosts, see {@link #getRemoteHosts()} */
     public String getRemoteHost()
     {   return m_remoteHost; }
     
+    /** 
+     * @return the hosts of the host pool given as comma separated list in
+     *         remoteHost. The hosts must share the home directory and the 
+     *         cluster queues, e.g. the login nodes of a cluster.
+     */
+    public List<String> getRemoteHosts() {
+        List<String> hosts = new ArrayList<String>();
+        for (String h : m_remoteHost.split(","))
+            if (!h.trim().isEmpty()) hosts.add(h.trim());
+        return hosts;
+    }
+    
+    /** 
+     * @return copy of this configuration with host as the only remote host,
+     *         e.g. to reach the host of a pool which runs a given process.
+     */
+    public SSHConfiguration forHost(String host) {
+        return new SSHConfiguration(host, m_portNumber, m_user, m_encryptPassword, 
+                m_encryptKeyPassphrase, m_timeoutSec, m_workDirectory, m_runMode, m_errLogFile,
+                m_executeSSH, m_compression, m_remoteIntermediates, m_detached);
+    }
+    
     public int getPortNumber()
     {   return m_portNumber; }
     
@@ -149,6 +213,36 @@ public class SSHConfiguration {
         return m_executeSSH;
     }
     
+    /** NONE if commands are executed locally */
+    public TransportCompression getCompression() {
+        return isLocal() ? TransportCompression.NONE : m_compression;
+    }
+    
+    /** 
+     * @return true if the output of nodes executed in executeSSH mode is kept in
+     *         {@link Settings#SSHRemoteScratchDir} and only downloaded when needed.
+     */
+    public boolean isRemoteIntermediates() {
+        return m_executeSSH && m_remoteIntermediates;
+    }
+    
+    /** 
+     * @return true if commands are submitted as background cluster jobs whose
+     *         state is polled by the {@link ClusterJobMonitor}. No ssh channel
+     *         is kept open while the job is running.
+     */
+    public boolean isDetached() {
+        return m_detached;
+    }
+    
+    /** 
+     * @return true if the remote host is {@link #LOCALHost}. Commands are 
+     *         then executed as local processes without ssh, see {@link CommandExecutor}.
+     */
+    public boolean isLocal() {
+        return LOCALHost.equalsIgnoreCase(m_remoteHost.trim());
+    }
+    
     public String getInitScriptName()
     {   return m_initScriptName; }
     
@@ -168,8 +262,13 @@ public class SSHConfiguration {
         String runMode = settings.getString("run-mode");
         String m_errLogFile = settings.getString("m_errLogFile", "");
         boolean executeSSH = settings.getBoolean("executeInEachNode", true);
+        TransportCompression compression = TransportCompression.fromName(
+                settings.getString("compression", TransportCompression.NONE.name()));
+        boolean remoteIntermediates = settings.getBoolean("remoteIntermediates", false);
+        boolean detached = settings.getBoolean("detached", false);
         return new SSHConfiguration(remoteHost, portNumber, user, encryptPassword, 
-                encryptKeyPassphrase, timeout, workDirectory, runMode, m_errLogFile, executeSSH);
+                encryptKeyPassphrase, timeout, workDirectory, runMode, m_errLogFile, executeSSH,
+                compression, remoteIntermediates, detached);
     }
 
     public static SSHConfiguration loadFromDialog(final NodeSettingsRO settings) {
@@ -183,8 +282,13 @@ public class SSHConfiguration {
         String runMode = settings.getString("run-mode", DEFAULTRunMode);
         String m_errLogFile = settings.getString("m_errLogFile", "");
         boolean executeSSH = settings.getBoolean("executeInEachNode", true);        
+        TransportCompression compression = TransportCompression.fromName(
+                settings.getString("compression", TransportCompression.NONE.name()));
+        boolean remoteIntermediates = settings.getBoolean("remoteIntermediates", false);
+        boolean detached = settings.getBoolean("detached", false);
         return new SSHConfiguration(remoteHost, portNumber, user, encryptPassword, 
-                encryptKeyPassphrase, timeout, workDirectory, runMode, m_errLogFile, executeSSH);
+                encryptKeyPassphrase, timeout, workDirectory, runMode, m_errLogFile, executeSSH,
+                compression, remoteIntermediates, detached);
     }
     
     public void save(final NodeSettingsWO settings) {
@@ -198,6 +302,9 @@ public class SSHConfiguration {
         settings.addString("run-mode", getRunMode());
         settings.addString("m_errLogFile", getErrorLogFile());
         settings.addBoolean("executeInEachNode", isExecuteSSH());
+        settings.addString("compression", m_compression.name());
+        settings.addBoolean("remoteIntermediates", m_remoteIntermediates);
+        settings.addBoolean("detached", m_detached);
     }
 
     private class SettingsUserInfo implements UserInfo {
@@ -30,6 +30,7 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -38,18 +39,36 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
-import org.eclipse.jsch.core.IJSchLocation;
-import org.eclipse.jsch.core.IJSchService;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.NodeLogger;
 import org.knime.core.node.workflow.FlowVariable;
 
-import com.genentech.knime.GNENodeActivator;
-import com.jcraft.jsch.ChannelExec;
+import com.genentech.knime.Settings;
+import com.genentech.knime.ssh.ChannelCompletion;
+import com.genentech.knime.ssh.PipedInputProducer;
+import com.genentech.knime.ssh.PipedOutputConsumer;
+import com.genentech.knime.ssh.SSHSessionPool;
+import com.genentech.knime.ssh.SSHSessionPool.SessionKey;
 import com.jcraft.jsch.Session;
 import com.jcraft.jsch.UserInfo;
 
@@ -63,6 +82,20 @@ public class SSHExecutionHelper {
     private static final NodeLogger LOGGER = NodeLogger
     .getLogger(SSHExecutionHelper.class);
 
+    /** number of times a new ssh connection is tried before giving up */
+    private static final int CONNECT_ATTEMPTS = 10;
+
+    /** removes remote files for nodes which must not wait for the network */
+    private static final ExecutorService CLEANER =
+        Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(r, "GNE-SSH-Cleanup");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
     private SSHExecutionHelper() {} // only static methods   
 
     /**
@@ -75,82 +108,279 @@ public class SSHExecutionHelper {
      */
    public static SSHExecutionResult execute(SDFCmdPortObjectSpec pSpec, 
             Collection<FlowVariable> vars, ExecutionContext exec, File tmpInFile) 
+   throws Exception {
+      return execute(pSpec, vars, exec, tmpInFile, null);
+   }
+
+    /**
+     * Execute the command in spec.getCommandObject.
+     *
+     * @param stdOut if not null the stdout of the command is written to this
+     *        stream while it arrives instead of to a temp file. The stream is
+     *        closed when the command finished and {@link SSHExecutionResult#getStdOut()}
+     *        will return null.
+     */
+   public static SSHExecutionResult execute(SDFCmdPortObjectSpec pSpec, 
+            Collection<FlowVariable> vars, ExecutionContext exec, File tmpInFile,
+            OutputStream stdOut) 
+   throws Exception {
+      return execute(pSpec, vars, exec, tmpInFile, null, stdOut, null);
+   }
+
+    /**
+     * Execute the command in spec.getCommandObject reading and writing files
+     * on the remote host, see {@link SSHConfiguration#isRemoteIntermediates()}.
+     *
+     * @param tmpInFile local file streamed to stdin of command, may be null.
+     * @param remoteInFile file on the remote host to be read as stdin of
+     *        command if tmpInFile is null, may be null.
+     * @param remoteOutFile file on the remote host to which stdout is written,
+     *        e.g. created by {@link #createRemoteScratchFile()}.
+     *        {@link SSHExecutionResult#getStdOut()} will return null.
+     */
+   public static SSHExecutionResult executeRemote(SDFCmdPortObjectSpec pSpec, 
+            Collection<FlowVariable> vars, ExecutionContext exec, File tmpInFile,
+            String remoteInFile, String remoteOutFile) 
+   throws Exception {
+      return execute(pSpec, vars, exec, tmpInFile, remoteInFile, null, remoteOutFile);
+   }
+
+   private static SSHExecutionResult execute(SDFCmdPortObjectSpec pSpec, 
+            Collection<FlowVariable> vars, ExecutionContext exec, File tmpInFile,
+            String remoteInFile, OutputStream stdOut, String remoteOutFile) 
+   throws Exception {
+      SSHConfiguration sshConfig = pSpec.getSSHConfiguration();
+      List<SharedPipeRegistry.Lease> leases = new ArrayList<SharedPipeRegistry.Lease>();
+      List<File> prefixErrs = new ArrayList<File>();
+      boolean completed = false;
+      try {
+         SSHExecutionResult res = execute(pSpec, vars, exec, tmpInFile, remoteInFile, 
+                                          stdOut, remoteOutFile, leases, prefixErrs);
+         prependStdErr(prefixErrs, res);
+         completed = true;
+         return res;
+      } finally {
+         for (File f : prefixErrs)
+            f.delete();
+         // a detached job might still read the shared output after a
+         // cancellation, it is then left to the sweep of the scratch directory
+         if (completed || !sshConfig.isDetached()) {
+            for (SharedPipeRegistry.Lease lease : leases)
+               removeSharedFiles(sshConfig, lease.release());
+         }
+      }
+   }
+
+    /**
+     * @param leases receives the leases of the shared pipe outputs read by
+     *        the command, they must be released when it completed.
+     * @param prefixErrs receives the stderr of a shared pipe executed for 
+     *        the command.
+     */
+   private static SSHExecutionResult execute(SDFCmdPortObjectSpec pSpec, 
+            Collection<FlowVariable> vars, ExecutionContext exec, File tmpInFile,
+            String remoteInFile, OutputStream stdOut, String remoteOutFile,
+            List<SharedPipeRegistry.Lease> leases, List<File> prefixErrs) 
    throws Exception {
       SSHConfiguration sshConfig = pSpec.getSSHConfiguration();
+      CommandObject cmdObj = pSpec.getCommandObject();
+      String pipeCommand;
+      String mysub;
+      if( sshConfig.isExecuteSSH() ) {
+          pipeCommand = cmdObj.getMyCommandLine();
+          mysub = cmdObj.getMysubOptions();
+      }
+      else {    
+          // TODO I think using getCSHPipe(true) should work and then we can do things like cat <<COMS>tmp$$.grvy\nsdfGroovy.csh -c $$.grvy
+          // cf. /gne/home/albertgo/tmp/testTcshBash.pl
+          pipeCommand = cmdObj.getCSHPipe(false);
+          mysub = cmdObj.getRootMysubOptions();
+      }
+
+      // Prepend "set flowVariableName=flowVariableValue;" strings
+      // so that users can use "$flowVarName" in the command line options 
+      // to specify the value of a flow variable
+      String env = getEnvCommands(vars);
+      
+      String jobName = "knime_" + cmdObj.getProgramDefintion().getLabel().replace(" ", "");
+      String mysubOptions = mysub;
+      mysub = String.format("mysub.py -interactive -printJobId -jobName %s %s -- ", 
+                            jobName, mysubOptions);
+      String cmd = buildRemoteScript(sshConfig, env, mysub, pipeCommand, false, false, 
+                                     remoteInFile, remoteOutFile);
+
+      // nothing to compress if input and output stay on the remote host
+      TransportCompression compression = sshConfig.getCompression();
+      boolean compress = remoteInFile == null && remoteOutFile == null
+                      && compression.isCompressed(tmpInFile);
+      boolean gzip = compress && compression == TransportCompression.GZIP;
+      String execCmd = gzip 
+               ? buildRemoteScript(sshConfig, env, mysub, pipeCommand, true, tmpInFile != null,
+                                   null, null)
+               : cmd;
+
+      // in executeSSH mode the input of upstream commands is in tmpInFile
+      ResultCache cache = ResultCache.getDefault();
+      String journalKey = null;
+      String cacheKey = null;
+      if (cache != null && remoteInFile == null && remoteOutFile == null
+          && ResultCache.isCacheable(cmdObj, !sshConfig.isExecuteSSH())) {
+         cacheKey = ResultCache.createKey(sshConfig.getRemoteHost(), sshConfig.getUser(), 
+                                          cmd, tmpInFile);
+         SSHExecutionResult cached = cache.get(cacheKey, stdOut);
+         if (cached != null) {
+            exec.setMessage("Using cached result");
+            return cached;
+         }
+      }
+      if (sshConfig.isDetached()) {
+         // computed before the pipe and its input are changed by the shared 
+         // pipe and the input store, which use new remote files on every run
+         journalKey = cacheKey != null ? cacheKey 
+                    : ResultCache.createKey(sshConfig.getRemoteHost(), sshConfig.getUser(), 
+                                            cmd, tmpInFile);
+      }
+      
+      // the cache key is computed from the complete pipe
+      if (!sshConfig.isExecuteSSH() && remoteInFile == null && Settings.SSHShareCommonPipes) {
+         String sharedPipe = getSharedPipe(pSpec, vars, env, exec, leases, prefixErrs);
+         if (sharedPipe != null) {
+            pipeCommand = sharedPipe;
+            cmd = buildRemoteScript(sshConfig, env, mysub, pipeCommand, false, false, 
+                                    remoteInFile, remoteOutFile);
+            execCmd = gzip 
+                  ? buildRemoteScript(sshConfig, env, mysub, pipeCommand, true, tmpInFile != null,
+                                      null, null)
+                  : cmd;
+         }
+      }
       
-      Session session = null;
+      // identical inputs are uploaded once and read from the remote input store
+      RemoteInputStore inputStore = RemoteInputStore.getDefault();
+      if (inputStore != null && tmpInFile != null && remoteInFile == null 
+          && inputStore.accepts(sshConfig, tmpInFile)) {
+         String storedInFile = inputStore.stage(sshConfig, tmpInFile, exec);
+         if (storedInFile != null) {
+            compress = remoteOutFile == null && compression.isCompressed(tmpInFile);
+            gzip = compress && compression == TransportCompression.GZIP;
+            remoteInFile = storedInFile;
+            tmpInFile = null;
+            cmd = buildRemoteScript(sshConfig, env, mysub, pipeCommand, false, false, 
+                                    remoteInFile, remoteOutFile);
+            execCmd = gzip 
+                  ? buildRemoteScript(sshConfig, env, mysub, pipeCommand, true, false,
+                                      remoteInFile, null)
+                  : cmd;
+         }
+      }
+      
+      if (sshConfig.isDetached()) {
+         SSHExecutionResult res = executeDetached(sshConfig, journalKey, env, jobName, mysubOptions, 
+                                    pipeCommand, exec, tmpInFile, remoteInFile, remoteOutFile);
+         if( sshConfig.getErrorLogFile().length() > 0 ) {
+            writeErrorLog(sshConfig, res.getStdErr(), vars);
+         }
+         if (cacheKey != null && res.getStatus() == 0) {
+            cache.put(cacheKey, res.getStdOut(), res.getStdErr());
+         }
+         if (stdOut != null && res.getStdOut() != null) {
+            try {
+               Files.copy(res.getStdOut().toPath(), stdOut);
+            } finally {
+               stdOut.close();
+               res.getStdOut().delete();
+            }
+            return new SSHExecutionResult(res.getStatus(), null, res.getStdErr());
+         }
+         return res;
+      }
+
+      CommandExecutor executor = CommandExecutor.create(sshConfig, 
+                              compress && compression == TransportCompression.SSH);
       try {
-         session = getConnectedSession(sshConfig);
-         
          // create temporary file to store sdf output.
-         File tmpOutFile = File.createTempFile("SDFCmdNodeOutputTable", ".sdf");
-         OutputStream tmpOutStrm = new BufferedOutputStream(new FileOutputStream(tmpOutFile));
+         File tmpOutFile = null;
+         OutputStream tmpOutStrm = stdOut;
+         ResultCache.Tee tee = null;
+         if (remoteOutFile != null) {
+            // stdout is redirected on the remote host
+            tmpOutStrm = new ByteArrayOutputStream();
+         } else if (tmpOutStrm == null) {
+            tmpOutFile = File.createTempFile("SDFCmdNodeOutputTable", ".sdf");
+            // the output may become the input of the next command
+            tmpOutStrm = new BufferedOutputStream(RemoteInputStore.hashWhileWriting(tmpOutFile,
+                                                      new FileOutputStream(tmpOutFile)));
+         } else if (cacheKey != null) {
+            tee = cache.tee(cacheKey, tmpOutStrm);
+            tmpOutStrm = tee;
+         }
          
          // create temporary file to store stderr.
          File tmpErrFile = File.createTempFile("SDFCmdNodeOutputTable", ".txt");
          OutputStream tmpErrStrm = new BufferedOutputStream(new FileOutputStream(tmpErrFile));
 
          InputStream tmpInStrm = null; 
+         OutputStream channelOutStrm = tmpOutStrm;
+         PipedInputProducer gzipIn = null;
+         PipedOutputConsumer<Long> gunzipOut = null;
+         List<ChannelCompletion.Check> checks = new ArrayList<ChannelCompletion.Check>();
          
-         LOGGER.debug("Opening Exec channel");
-         ChannelExec execChannel = (ChannelExec) session.openChannel("exec");
+         RemoteCancellation cancellation = new RemoteCancellation(sshConfig);
          try {
-        	CommandObject cmdObj = pSpec.getCommandObject();
-            String pipeCommand;
-            String mysub;
-            if( sshConfig.isExecuteSSH() ) {
-                pipeCommand = cmdObj.getMyCommandLine();
-            	mysub = cmdObj.getMysubOptions();
-            }
-            else {    
-                // TODO I think using getCSHPipe(true) should work and then we can do things like cat <<COMS>tmp$$.grvy\nsdfGroovy.csh -c $$.grvy
-                // cf. /gne/home/albertgo/tmp/testTcshBash.pl
-                pipeCommand = cmdObj.getCSHPipe(false);
-            	mysub = cmdObj.getRootMysubOptions();
-            }
-
-            // Prepend "set flowVariableName=flowVariableValue;" strings
-            // so that users can use "$flowVarName" in the command line options 
-            // to specify the value of a flow variable
-            String env = getEnvCommands(vars);
-            
-            mysub = String.format("mysub.py -interactive -jobName %s %s -- ", 
-            		               "knime_" + cmdObj.getProgramDefintion().getLabel().replace(" ", ""),
-            		               mysub);
-            String cmd = 
-                  "source " + sshConfig.getInitScriptName() + "; "
-                + env
-                + "cd " + sshConfig.getWorkDirectory() + ";" 
-                + mysub
-                + '\'' + pipeCommand.replace("'", "'\\''") + '\'';
-            // 20160111 we should be able to use "'\''" instead of "'\"'\"'"
-            // since this results in exponential lengthening of the string it might be worthwhile
-            // cf. bsub command line subnode
-            cmd = "/bin/tcsh -fc '" + cmd.replace("'", "'\\''") + "'";
-            execChannel.setCommand(cmd);
-            
             if (tmpInFile != null) {
-                tmpInStrm = new BufferedInputStream(new FileInputStream(tmpInFile));
-                execChannel.setInputStream(tmpInStrm);
+                if (gzip) {
+                    gzipIn = TransportCompression.createGzipProducer(tmpInFile);
+                    tmpInStrm = gzipIn.start();
+                    final PipedInputProducer producer = gzipIn;
+                    checks.add(new ChannelCompletion.Check() {
+                        @Override
+                        public void check() throws Exception {
+                            producer.checkFailed();
+                        }
+                    });
+                } else {
+                    tmpInStrm = new BufferedInputStream(new FileInputStream(tmpInFile));
+                }
+            }
+            if (gzip) {
+                gunzipOut = TransportCompression.createGunzipConsumer(tmpOutStrm);
+                channelOutStrm = gunzipOut.start();
+                final PipedOutputConsumer<Long> consumer = gunzipOut;
+                checks.add(new ChannelCompletion.Check() {
+                    @Override
+                    public void check() throws Exception {
+                        consumer.checkFailed();
+                    }
+                });
             }
-            execChannel.setErrStream(tmpErrStrm);
-            execChannel.setOutputStream(tmpOutStrm);
             // once more before take-off
             exec.checkCanceled();
             exec.setMessage("Executing on host " + sshConfig.getRemoteHost());
             LOGGER.info("Executing node via SSH on " + sshConfig.getRemoteHost());
-            LOGGER.debug("Executing remotely command: '" + cmd + "'");
-            execChannel.connect(sshConfig.getTimeoutUSec());
-            exec.setMessage("Waiting for remote command to finish");
+            LOGGER.debug("Executing remotely command: '" + execCmd + "'");
             exec.setProgress(pipeCommand);
-            while (!execChannel.isClosed()) {
-               exec.checkCanceled();
-               Thread.sleep(500);
+            int status;
+            try {
+               status = executor.execute(cancellation.wrap(execCmd), tmpInStrm, channelOutStrm,
+                                         cancellation.watch(tmpErrStrm), exec, checks);
+            } catch (Exception e) {
+               // the remote command and its cluster job would keep running,
+               // nothing to stop if it failed while queued or connecting
+               if (executor.isStarted()) {
+                  exec.setMessage("Stopping remote command");
+                  cancellation.setHost(executor.getHost());
+                  cancellation.cancel();
+               }
+               throw e;
             }
             //LOGGER.debug("SSH execution finished.");
             exec.checkCanceled();
+            if (gunzipOut != null) {
+                // stdout is complete once the decompressing thread is done
+                gunzipOut.join();
+                gunzipOut = null;
+            }
             
-            int status = execChannel.getExitStatus();
             LOGGER.debug("Executing remotely command exit status=" + status);
             
             tmpOutStrm.close();
@@ -161,17 +391,32 @@ public class SSHExecutionHelper {
                 writeErrorLog(sshConfig, tmpErrFile, vars);
             }
             
+            if (cacheKey != null && status == 0) {
+                if (tee != null)
+                    tee.commit(tmpErrFile);
+                else
+                    cache.put(cacheKey, tmpOutFile, tmpErrFile);
+            }
+            
             return new SSHExecutionResult(status, tmpOutFile, tmpErrFile);
             
          } finally {
-            if (execChannel != null && execChannel.isConnected()) {
-               execChannel.disconnect();
-            }
             if (tmpInStrm != null) {
                 tmpInStrm.close();
             }
+            if (gunzipOut != null) {
+                channelOutStrm.close();
+                try {
+                    gunzipOut.join();
+                } catch (Exception e) {
+                    LOGGER.debug("Decompressing stdout failed: " + e.getMessage());
+                }
+            }
             tmpOutStrm.close();
             tmpErrStrm.close();
+            if (tee != null) {
+                tee.discard();
+            }
          }
          
 
@@ -181,12 +426,540 @@ public class SSHExecutionHelper {
             LOGGER.error("Job submission failed: " + e.getMessage());
          }
          throw e;
+      }
+   }
+
+   /**
+    * @param gzip if true stdout and, if hasInput, stdin of the command are
+    *             gzip compressed, see {@link TransportCompression}.
+    * @param remoteInFile if not null stdin is read from this file on the remote host.
+    * @param remoteOutFile if not null stdout is redirected to this file on the remote host.
+    * @return the tcsh script executed via ssh, see {@link CommandExecutor}.
+    */
+   private static String buildRemoteScript(SSHConfiguration sshConfig, String env,
+            String mysub, String pipeCommand, boolean gzip, boolean hasInput, 
+            String remoteInFile, String remoteOutFile) {
+      StringBuilder job = new StringBuilder(mysub.length() + pipeCommand.length() + 200);
+      job.append(mysub).append(PipePlan.quote(pipeCommand));
+      if (remoteInFile != null) {
+         job.append(" < ").append(remoteInFile);
+      }
+      String jobCmd = job.toString();
+      if (gzip) {
+         jobCmd = TransportCompression.wrapGzipCommand(jobCmd, hasInput);
+      }
+      if (remoteOutFile != null) {
+         jobCmd = getScratchSetupCommand() + jobCmd + " >! " + remoteOutFile;
+      }
+      return "source " + sshConfig.getInitScriptName() + "; "
+           + env
+           + "cd " + sshConfig.getWorkDirectory() + ";" 
+           + jobCmd;
+   }
+
+   /**
+    * Run a short command on the remote host, e.g. to query the state of
+    * cluster jobs.
+    * 
+    * @param script tcsh commands, quoted by the {@link CommandExecutor}.
+    * @return stdout of the command.
+    * @throws IOException if the command returned a non zero status.
+    */
+   static String runCommand(SSHConfiguration sshConfig, String script, ExecutionMonitor exec) 
+            throws Exception {
+      return runCommand(sshConfig, script, exec, true);
+   }
+
+   /**
+    * @param admitted if false the command does not wait for the 
+    *        {@link AdmissionController}, e.g. for cleaning up after a command
+    *        which still holds its permit.
+    */
+   static String runCommand(SSHConfiguration sshConfig, String script, ExecutionMonitor exec,
+            boolean admitted) throws Exception {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ByteArrayOutputStream err = new ByteArrayOutputStream();
+      CommandExecutor executor = CommandExecutor.create(sshConfig, false);
+      if (!admitted) executor.bypassAdmission();
+      int status = executor.execute(script, null, out, err, exec, 
+                              Collections.<ChannelCompletion.Check>emptyList());
+      if (status != 0) {
+         throw new IOException(String.format("'%s' returned %d on %s: %s", 
+                  script, status, sshConfig.getRemoteHost(), err.toString().trim()));
+      }
+      return out.toString("UTF-8");
+   }
+
+   /**
+    * Submit the pipe as background cluster job and wait for the 
+    * {@link ClusterJobMonitor} to report its completion.
+    * 
+    * The input is uploaded into a spool directory in the remote scratch 
+    * directory, stdout and stderr of the job are written there and downloaded 
+    * when the job is complete. No ssh session is leased while the job is
+    * queued or running.
+    * 
+    * The job is recorded in the {@link JobJournal} under key so that a later
+    * execution with the same key reattaches to it.
+    */
+   private static SSHExecutionResult executeDetached(SSHConfiguration sshConfig, String key,
+            String env, String jobName, String mysubOptions, String pipeCommand, 
+            ExecutionContext exec, File tmpInFile, String remoteInFile, String remoteOutFile)
+            throws Exception {
+      boolean journaled = JobJournal.acquire(key);
+      try {
+         Properties state = journaled ? JobJournal.read(key) : null;
+         if (state != null) {
+            String spoolDir = state.getProperty(JobJournal.SPOOL_DIR);
+            String found = runCommand(sshConfig, 
+                     "if ( -d " + spoolDir + " ) echo found", exec).trim();
+            if (found.isEmpty()) {
+               LOGGER.warn("Spool directory of cluster job " + state.getProperty(JobJournal.JOB_ID)
+                           + " was removed, submitting again");
+               JobJournal.remove(key);
+               state = null;
+            } else {
+               LOGGER.info("Reattaching to cluster job " + state.getProperty(JobJournal.JOB_ID) 
+                           + " on " + sshConfig.getRemoteHost());
+               exec.setMessage("Reattaching to cluster job " 
+                               + state.getProperty(JobJournal.JOB_ID));
+            }
+         }
+         if (state == null) {
+            state = submitDetached(sshConfig, env, jobName, mysubOptions, pipeCommand, exec,
+                                   tmpInFile, remoteInFile, remoteOutFile);
+            if (journaled) JobJournal.write(key, state);
+         }
+
+         SSHExecutionResult res = fetchDetached(sshConfig, key, journaled, state, 
+                                                pipeCommand, exec, remoteOutFile != null);
+         if (journaled) JobJournal.remove(key);
+         return res;
 
       } finally {
-         if (session != null && session.isConnected()) {
-            session.disconnect();
+         if (journaled) JobJournal.release(key);
+      }
+   }
+
+   /**
+    * @return the state of the submitted job as recorded in the {@link JobJournal}.
+    */
+   private static Properties submitDetached(SSHConfiguration sshConfig, String env, 
+            String jobName, String mysubOptions, String pipeCommand, ExecutionContext exec, 
+            File tmpInFile, String remoteInFile, String remoteOutFile) throws Exception {
+      String spoolDir = createRemoteScratchFile("");
+      String inFile = remoteInFile;
+      if (tmpInFile != null) {
+         inFile = spoolDir + "/in.sdf";
+         exec.setMessage("Uploading input to " + sshConfig.getRemoteHost());
+         InputStream in = new BufferedInputStream(new FileInputStream(tmpInFile));
+         try {
+            CommandExecutor.create(sshConfig, 
+                     sshConfig.getCompression() == TransportCompression.SSH).upload(in, inFile);
+         } finally {
+            in.close();
          }
       }
+      // a stored input is linked so that it is not removed while the job is queued
+      String link = "";
+      RemoteInputStore inputStore = RemoteInputStore.getDefault();
+      if (inputStore != null && inputStore.isStored(inFile)) {
+         link = inputStore.getLinkCommand(inFile, spoolDir + "/in.sdf") + "; ";
+         inFile = spoolDir + "/in.sdf";
+      }
+      String outFile = remoteOutFile != null ? remoteOutFile : spoolDir + "/out.sdf";
+      String exitFile = spoolDir + "/exit";
+
+      // stdout and stderr are separated by the subshell, the exit status is 
+      // written last so that its existence signals a complete execution
+      String job = "((" + pipeCommand + ") < " + (inFile == null ? "/dev/null" : inFile) 
+                 + " >! " + outFile + ") >&! " + spoolDir + "/err.txt; "
+                 + "echo $status >! " + exitFile + ".tmp; mv " + exitFile + ".tmp " + exitFile;
+      String mysub = getScratchSetupCommand() + String.format(
+               "mkdir -p %s; %smysub.py -printJobId -jobName %s -output %s/job.log %s -- ", 
+               spoolDir, link, jobName, spoolDir, mysubOptions);
+      String script = buildRemoteScript(sshConfig, env, mysub, job, false, false, null, null);
+
+      exec.checkCanceled();
+      exec.setMessage("Submitting cluster job on " + sshConfig.getRemoteHost());
+      LOGGER.debug("Submitting detached job: '" + script + "'");
+      String[] lines = runCommand(sshConfig, script, exec).trim().split("\n");
+      String jobId = lines[lines.length - 1].trim();
+      if (!jobId.matches("\\d+")) {
+         throw new IOException("Could not submit cluster job on " + sshConfig.getRemoteHost() 
+                               + ": " + jobId);
+      }
+      LOGGER.info("Submitted cluster job " + jobId + " on " + sshConfig.getRemoteHost());
+
+      Properties state = new Properties();
+      state.setProperty(JobJournal.JOB_ID, jobId);
+      state.setProperty(JobJournal.SPOOL_DIR, spoolDir);
+      state.setProperty(JobJournal.OUT_FILE, outFile);
+      return state;
+   }
+
+   /**
+    * Wait for the job in state to complete and download its stderr and, 
+    * unless its stdout stays on the remote host, its stdout.
+    */
+   private static SSHExecutionResult fetchDetached(SSHConfiguration sshConfig, String key,
+            boolean journaled, Properties state, String pipeCommand, ExecutionContext exec, 
+            boolean remoteOut) throws Exception {
+      String jobId = state.getProperty(JobJournal.JOB_ID);
+      String spoolDir = state.getProperty(JobJournal.SPOOL_DIR);
+      String exitFile = spoolDir + "/exit";
+
+      ClusterJobMonitor monitor = ClusterJobMonitor.getMonitor(sshConfig);
+      ClusterJobMonitor.Job clusterJob = monitor.add(jobId, exitFile);
+      exec.setProgress(pipeCommand);
+      try {
+         clusterJob.await(exec);
+      } catch (IOException e) {
+         // a lost job is submitted again by the next execution
+         if (clusterJob.isLost()) {
+            removeSpoolDir(sshConfig, spoolDir);
+            if (journaled) JobJournal.remove(key);
+         }
+         throw e;
+      } catch (CanceledExecutionException | InterruptedException e) {
+         // interrupted e.g. when another chunk of a chunked execution failed
+         exec.setMessage("Canceling cluster job " + jobId);
+         RemoteCancellation cancellation = new RemoteCancellation(sshConfig);
+         cancellation.addJobId(jobId);
+         cancellation.cancel();
+         removeSpoolDir(sshConfig, spoolDir);
+         if (journaled) JobJournal.remove(key);
+         throw e;
+      } finally {
+         monitor.remove(clusterJob);
+      }
+
+      exec.setMessage("Fetching results of cluster job " + jobId);
+      String exitStatus = runCommand(sshConfig, 
+               "if ( -e " + exitFile + " ) cat " + exitFile, exec).trim();
+      File tmpErrFile = File.createTempFile("SDFCmdNodeOutputTable", ".txt");
+      File tmpOutFile = null;
+      int status;
+      try {
+         if (exitStatus.isEmpty()) {
+            // job did not run to completion, e.g. canceled or time limit
+            try {
+               download(sshConfig, spoolDir + "/job.log", tmpErrFile, exec);
+            } catch (IOException e) {
+               LOGGER.debug(e.getMessage());
+            }
+            Files.write(tmpErrFile.toPath(), String.format("%nCluster job %s ended in state %s%n", 
+                        jobId, clusterJob.getState()).getBytes(StandardCharsets.UTF_8), 
+                        StandardOpenOption.APPEND);
+            status = -1;
+         } else {
+            status = Integer.parseInt(exitStatus);
+            download(sshConfig, spoolDir + "/err.txt", tmpErrFile, exec);
+            if (!remoteOut) {
+               // continue a download interrupted before the reattach
+               String localOut = state.getProperty(JobJournal.LOCAL_OUT_FILE);
+               if (localOut != null && new File(localOut).isFile()) {
+                  tmpOutFile = new File(localOut);
+               } else {
+                  tmpOutFile = File.createTempFile("SDFCmdNodeOutputTable", ".sdf");
+                  state.setProperty(JobJournal.LOCAL_OUT_FILE, tmpOutFile.getPath());
+                  if (journaled) JobJournal.write(key, state);
+               }
+               downloadResuming(sshConfig, state.getProperty(JobJournal.OUT_FILE), 
+                                tmpOutFile, exec);
+            }
+         }
+      } catch (Exception e) {
+         tmpErrFile.delete();
+         // a partial stdout is kept for resuming the download
+         throw e;
+      }
+
+      removeSpoolDir(sshConfig, spoolDir);
+      LOGGER.debug("Cluster job " + jobId + " exit status=" + status);
+      return new SSHExecutionResult(status, tmpOutFile, tmpErrFile);
+   }
+
+   private static void removeSpoolDir(SSHConfiguration sshConfig, String spoolDir) {
+      try {
+         runCommand(sshConfig, "rm -rf " + spoolDir, new ExecutionMonitor(), false);
+      } catch (Exception e) {
+         LOGGER.debug("Could not remove " + spoolDir + ": " + e.getMessage());
+      }
+   }
+
+   /**
+    * Download remoteFile appending to the bytes already in localFile. If the
+    * connection breaks the download is resumed at the last byte received.
+    */
+   private static void downloadResuming(SSHConfiguration sshConfig, String remoteFile, 
+            File localFile, ExecutionMonitor exec) throws Exception {
+      for (int attempt = 1; ; attempt++) {
+         try {
+            download(sshConfig, remoteFile, localFile, true, exec);
+            return;
+         } catch (CanceledExecutionException e) {
+            throw e;
+         } catch (Exception e) {
+            if (attempt >= CONNECT_ATTEMPTS) throw e;
+            LOGGER.warn(String.format("Download of %s interrupted at byte %d, resuming: %s", 
+                        remoteFile, localFile.length(), e.getMessage()));
+         }
+      }
+   }
+
+   /**
+    * Upload localFile by sftp. If the connection breaks the upload is resumed
+    * at the last byte received by the remote host.
+    */
+   public static void uploadResuming(SSHConfiguration sshConfig, File localFile, 
+            String remoteFile, ExecutionMonitor exec) throws Exception {
+      TransportCompression compression = sshConfig.getCompression();
+      CommandExecutor executor = CommandExecutor.create(sshConfig, 
+               compression == TransportCompression.SSH && compression.isCompressed(localFile));
+      exec.setMessage("Uploading " + localFile.getName() + " to " + sshConfig.getRemoteHost());
+      for (int attempt = 1; ; attempt++) {
+         try {
+            executor.upload(localFile, remoteFile, attempt > 1, exec);
+            return;
+         } catch (CanceledExecutionException e) {
+            throw e;
+         } catch (Exception e) {
+            if (attempt >= CONNECT_ATTEMPTS) throw e;
+            LOGGER.warn(String.format("Upload of %s interrupted (%s), resuming", 
+                        remoteFile, e.getMessage()));
+         }
+      }
+   }
+
+   /**
+    * If a prefix of the pipe of pSpec also feeds other branches of the
+    * workflow, see {@link SharedPipeRegistry}, make sure its output is 
+    * available in the remote scratch directory. The prefix is executed if
+    * this is the first branch using it.
+    * 
+    * Prefixes which are not cacheable, see {@link ResultCache#isCacheable},
+    * are executed by every branch.
+    * 
+    * @param leases receives the lease of the output file of the prefix.
+    * @return the pipe of pSpec reading the output of the shared prefix, null
+    *         if there is no shared prefix or it failed.
+    */
+   private static String getSharedPipe(SDFCmdPortObjectSpec pSpec, 
+            Collection<FlowVariable> vars, String env, ExecutionContext exec,
+            List<SharedPipeRegistry.Lease> leases, List<File> prefixErrs) throws Exception {
+      SSHConfiguration sshConfig = pSpec.getSSHConfiguration();
+      CommandObject cmdObj = pSpec.getCommandObject();
+      CommandObject branch = SharedPipeRegistry.findBranch(cmdObj);
+      if (branch == null) return null;
+
+      CommandObject prefix = branch.getParentCmdObjectList().get(0);
+      // the output of e.g. random sampling differs on every execution
+      if (!ResultCache.isCacheable(prefix, true)) return null;
+      String prefixPipe = prefix.getCSHPipe(false);
+      String pipe = cmdObj.getCSHPipe(false);
+      if (!pipe.startsWith(prefixPipe)) return null;
+
+      // flow variables, init script and work directory may change the output
+      String key = ResultCache.createKey(sshConfig.getRemoteHost(), sshConfig.getUser(),
+               sshConfig.getInitScriptName() + '\n' + sshConfig.getWorkDirectory() + '\n' 
+               + env + '\n' + prefix.getStructuralHash(), null);
+      SharedPipeRegistry.Shared shared = SharedPipeRegistry.getShared(key);
+      SharedPipeRegistry.Lease lease;
+      while (true) {
+         // branches wait for the one executing the prefix without holding the lock
+         CountDownLatch computing;
+         synchronized (shared) {
+            computing = shared.getComputing();
+            if (computing == null) {
+               lease = shared.use(branch);
+               if (lease == null) shared.startComputing();
+               break;
+            }
+         }
+         exec.setMessage("Waiting for pipe shared with other branches");
+         while (!computing.await(500, TimeUnit.MILLISECONDS))
+            exec.checkCanceled();
+      }
+
+      List<String> obsolete;
+      String remoteFile;
+      if (lease == null) {
+         remoteFile = createRemoteScratchFile();
+         exec.setMessage("Executing pipe shared with other branches");
+         SSHExecutionResult res = null;
+         try {
+            res = execute(new SDFCmdPortObjectSpec(prefix, sshConfig), vars, 
+                          exec, null, null, null, remoteFile);
+         } finally {
+            synchronized (shared) {
+               if (res != null && res.getStatus() == 0) lease = shared.set(branch, remoteFile);
+               shared.endComputing();
+            }
+         }
+         // reported with the stderr of the complete pipe
+         prefixErrs.add(res.getStdErr());
+         if (res.getStatus() != 0) {
+            // the complete pipe reports the error
+            LOGGER.warn("Shared pipe returned status " + res.getStatus() 
+                        + ", executing the complete pipe");
+         }
+      } else {
+         remoteFile = lease.getRemoteFile();
+         LOGGER.info("Reading output of shared pipe from " + remoteFile);
+      }
+      synchronized (shared) {
+         obsolete = shared.takeObsolete();
+      }
+      if (lease != null) {
+         leases.add(lease);
+      } else {
+         obsolete.add(remoteFile);
+         remoteFile = null;
+      }
+      removeSharedFiles(sshConfig, obsolete);
+      if (remoteFile == null) return null;
+      return "cat " + remoteFile + pipe.substring(prefixPipe.length());
+   }
+
+   /**
+    * Write the stderr of the shared pipes executed for res before its own
+    * stderr.
+    */
+   private static void prependStdErr(List<File> prefixErrs, SSHExecutionResult res) 
+            throws IOException {
+      if (prefixErrs.isEmpty() || res.getStdErr() == null) return;
+
+      File merged = File.createTempFile("SDFCmdNodeOutputTable", ".txt");
+      try {
+         OutputStream out = new BufferedOutputStream(new FileOutputStream(merged));
+         try {
+            for (File f : prefixErrs)
+               Files.copy(f.toPath(), out);
+            Files.copy(res.getStdErr().toPath(), out);
+         } finally {
+            out.close();
+         }
+         Files.move(merged.toPath(), res.getStdErr().toPath(), 
+                    StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+         merged.delete();
+      }
+   }
+
+   /**
+    * Remove output files of shared pipes no longer read by any branch.
+    */
+   private static void removeSharedFiles(SSHConfiguration sshConfig, List<String> files) {
+      if (files.isEmpty()) return;
+      StringBuilder script = new StringBuilder("rm -f");
+      for (String file : files)
+         script.append(' ').append(file);
+      try {
+         runCommand(sshConfig, script.toString(), new ExecutionMonitor(), false);
+      } catch (Exception e) {
+         LOGGER.warn("Could not remove shared pipe output " + files + ": " + e.getMessage());
+      }
+   }
+
+   /**
+    * Remove file on the remote host in a background thread, e.g. when a node
+    * is reset or disposed in the UI thread. Failures are logged.
+    * 
+    * @return future which is done when the file was removed or could not be removed.
+    */
+   public static Future<?> removeRemoteFileLater(final SSHConfiguration sshConfig, 
+            final String file) {
+      return CLEANER.submit(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               runCommand(sshConfig, "rm -f " + file, new ExecutionMonitor(), false);
+            } catch (Exception e) {
+               LOGGER.warn("Could not remove " + file + " on " + sshConfig.getRemoteHost() 
+                           + ": " + e.getMessage());
+            }
+         }
+      });
+   }
+
+   /**
+    * @return new file name in {@link Settings#SSHRemoteScratchDir}.
+    */
+   public static String createRemoteScratchFile() {
+      return createRemoteScratchFile(".sdf");
+   }
+
+   static String createRemoteScratchFile(String suffix) {
+      return Settings.SSHRemoteScratchDir + "/knime_" + UUID.randomUUID() + suffix;
+   }
+
+   /**
+    * Create the scratch directory and remove files older than 
+    * {@link Settings#SSHRemoteScratchMaxDays} so that results of nodes which
+    * were reset or deleted do not accumulate.
+    */
+   private static String getScratchSetupCommand() {
+      String dir = Settings.SSHRemoteScratchDir;
+      return "mkdir -p " + dir + "; "
+           + "find " + dir + " -name 'knime_*' -mtime +" + Settings.SSHRemoteScratchMaxDays
+           + " -delete >& /dev/null; ";
+   }
+
+   /**
+    * Copy a file from the remote host to localFile, e.g. an intermediate 
+    * result created with {@link #executeRemote}.
+    * 
+    * The compression configured in sshConfig is used for the transfer.
+    */
+   public static void download(SSHConfiguration sshConfig, String remoteFile, File localFile,
+            ExecutionMonitor exec) throws Exception {
+      download(sshConfig, remoteFile, localFile, false, exec);
+   }
+
+   /**
+    * @param append if true only the bytes of remoteFile after the length of
+    *        localFile are transferred and appended to localFile.
+    */
+   private static void download(SSHConfiguration sshConfig, String remoteFile, File localFile,
+            boolean append, ExecutionMonitor exec) throws Exception {
+      TransportCompression compression = sshConfig.getCompression();
+      boolean gzip = compression == TransportCompression.GZIP;
+      long offset = append ? localFile.length() : 0;
+      String cmd = offset > 0 ? "tail -c +" + (offset + 1) + " " + remoteFile
+                              : "cat " + remoteFile;
+      if (gzip) cmd = TransportCompression.wrapGzipCommand(cmd, false);
+
+      CommandExecutor executor = CommandExecutor.create(sshConfig, 
+                                          compression == TransportCompression.SSH);
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(localFile, append));
+      ByteArrayOutputStream err = new ByteArrayOutputStream();
+      PipedOutputConsumer<Long> gunzipOut = null;
+      OutputStream channelOut = out;
+      try {
+         if (gzip) {
+            gunzipOut = TransportCompression.createGunzipConsumer(out);
+            channelOut = gunzipOut.start();
+         }
+         exec.setMessage("Downloading " + remoteFile);
+         int status = executor.execute(cmd, null, channelOut, err, exec, 
+                                       Collections.<ChannelCompletion.Check>emptyList());
+         if (gunzipOut != null) {
+            gunzipOut.join();
+            gunzipOut = null;
+         }
+         if (status != 0) {
+            throw new IOException(String.format("Could not read %s from %s: %s", 
+                     remoteFile, sshConfig.getRemoteHost(), err.toString().trim()));
+         }
+
+      } finally {
+         if (gunzipOut != null) {
+            // let the decompressing thread finish
+            channelOut.close();
+         }
+         out.close();
+      }
    }
 
 	private static String getEnvCommands(Collection<FlowVariable> vars) {
@@ -205,11 +978,7 @@ public class SSHExecutionHelper {
 		    {   LOGGER.warn("Flow Variable not passed to ssh (longer than 500): " + vName);
 		        continue;
 		    }
-		    // 20160111 we should be able to use "'\''" instead of "'\"'\"'"
-		    // since this results in exponential lengthening of the string it might be worthwhile
-		    // cf. bsub command line subnode
-		    value = value.replace("'", "'\"'\"'");
-		    env.append("setenv ").append(vName).append(" '").append(value).append("';");
+		    env.append("setenv ").append(vName).append(' ').append(PipePlan.quote(value)).append(';');
 		}
 		return env.toString();
 	}
@@ -269,56 +1038,66 @@ public class SSHExecutionHelper {
     }
 
    
-   public static synchronized Session getConnectedSession(
+   /**
+    * Lease a connected session from the {@link SSHSessionPool}.
+    * 
+    * Connecting is retried with backoff. Nodes talking to different hosts
+    * connect concurrently. If the configuration names a host pool the session
+    * is connected to one of its hosts, see {@link SSHSessionPool#lease(List, UserInfo, int, int)}.
+    * The session must be given back with {@link #releaseSession(Session)}.
+    */
+   public static Session getConnectedSession(
            final SSHConfiguration configSettings) throws Exception {
+       return getConnectedSession(configSettings, false);
+   }
+
+   /**
+    * @param compress if true the session uses ssh zlib compression.
+    * @see #getConnectedSession(SSHConfiguration)
+    */
+   public static Session getConnectedSession(
+           final SSHConfiguration configSettings, boolean compress) throws Exception {
 
        int port = configSettings.getPortNumber();
        if (port < 0) {
            port = SSHConfiguration.DEFAULTSshPort;
        }
 
-       String remoteHost = configSettings.getRemoteHost();
-       String user = configSettings.getUser();
-       if (user == null || user.trim().isEmpty()) {
-           if( remoteHost.contains("@") ) {
-               user = remoteHost.substring(0,remoteHost.indexOf('@'));
-               remoteHost = remoteHost.substring(remoteHost.indexOf('@')+1);
-           } else {
-               user = System.getProperty("user.name");
+       List<SessionKey> keys = new ArrayList<SessionKey>();
+       for (String remoteHost : configSettings.getRemoteHosts()) {
+           String user = configSettings.getUser();
+           if (user == null || user.trim().isEmpty()) {
+               if( remoteHost.contains("@") ) {
+                   user = remoteHost.substring(0,remoteHost.indexOf('@'));
+                   remoteHost = remoteHost.substring(remoteHost.indexOf('@')+1);
+               } else {
+                   user = System.getProperty("user.name");
+               }
            }
+           keys.add(SSHSessionPool.createKey(user, remoteHost, port, 
+                   configSettings.getEncryptPassword(), configSettings.getEncryptKeyPassPhrase(),
+                   compress));
        }
        
-       IJSchService service =
-           GNENodeActivator.getDefault().getIJSchService();
-       IJSchLocation location = service.getLocation(user, remoteHost, port);
+       SSHSessionPool pool = SSHSessionPool.getDefault();
        UserInfo userInfo = configSettings.getSSHUserInfo();
 
-       Session session = null;
-       int nRetry = 10;
-       Exception firstE = null;
-       while( nRetry-- > 0 ) {
-           try {
-               session = service.createSession(location, userInfo);
-               session.connect(configSettings.getTimeoutUSec());
-               
-               return session;
-               
-           }catch (Exception e) {
-               LOGGER.error("Problem creating ssh connection, retrying: " + e.getMessage());
-               if( firstE == null ) firstE = e;
-               try {
-                   if (session != null && session.isConnected()) 
-                       session.disconnect();
-               } catch (Exception e2) {
-                   LOGGER.error("Problem closing ssh connection, retrying: " + e2.getMessage());
-               }
+       try {
+           return pool.lease(keys, userInfo, configSettings.getTimeoutUSec(), CONNECT_ATTEMPTS);
+           
+       }catch (Exception e) {
+           if (e.getMessage() != null && !e.getMessage().isEmpty()) {
+               throw e;
            }
-       } 
-       
-       if (firstE.getMessage() != null && !firstE.getMessage().isEmpty()) {
-           throw firstE;
+           throw new IllegalStateException("Couldn't establish SSH session.", e);
        }
-       throw new IllegalStateException("Couldn't establish SSH session.", firstE);
    }
 
-}
\ No newline at end of file
+   /**
+    * Return a session obtained from {@link #getConnectedSession(SSHConfiguration)}
+    * to the pool.
+    */
+   public static void releaseSession(Session session) {
+       SSHSessionPool.getDefault().release(session);
+   }
+}
@@ -0,0 +1,340 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.knime.core.node.workflow.NodeContainer;
+import org.knime.core.node.workflow.NodeContext;
+import org.knime.core.node.workflow.WorkflowManager;
+
+import com.genentech.knime.Settings;
+
+/**
+ * Detects parts of pipes which feed several branches of a workflow so that
+ * they are executed only once, see {@link Settings#SSHShareCommonPipes}.
+ *
+ * Every node creating a {@link SDFCmdPortObjectSpec} registers its command
+ * with the parents of the command, a node which is configured again replaces
+ * its previous registration. A command is a branch point if nodes still
+ * contained in their workflow read it with at least two different structural
+ * hashes. Commands created outside of a node, e.g. when loading port specs,
+ * are not registered.
+ *
+ * The output of a shared prefix is materialized in a file on the remote host
+ * by the first branch executed and then read by the other branches, which
+ * wait while it is executed and can be canceled meanwhile. Each
+ * branch uses the file once, when all branches have used it, or when it gets
+ * old, the next execution computes the prefix again. The file is removed
+ * when the last branch reading it has completed.
+ *
+ * @author albertgo @ Genentech
+ */
+public class SharedPipeRegistry {
+
+    /** structural hash of parent -> node id -> child registered by that node */
+    private static final Map<String, Map<String, Child>> CHILDREN =
+        new HashMap<String, Map<String, Child>>();
+
+    /** node id -> structural hashes of the parents its command is registered with */
+    private static final Map<String, List<String>> NODE_PARENTS = new HashMap<String, List<String>>();
+
+    private static final Map<String, Shared> SHARED = new HashMap<String, Shared>();
+
+    /** materialized output is not reused after half of the remote scratch lifetime */
+    private static final long MAX_AGE_MS = Settings.SSHRemoteScratchMaxDays * 12L * 3600 * 1000;
+
+    private SharedPipeRegistry() {} // only static methods
+
+
+    /**
+     * Register cmd as child of its parents for the node currently executing 
+     * or configuring, if any.
+     */
+    static void register(final CommandObject cmd) {
+        NodeContext ctx = NodeContext.getContext();
+        NodeContainer node = ctx == null ? null : ctx.getNodeContainer();
+        if (node == null) return;
+        String nodeId = node.getID().toString();
+
+        List<String> parentHashes = new ArrayList<String>();
+        for (CommandObject parent : cmd.getParentCmdObjectList())
+            parentHashes.add(parent.getStructuralHash());
+
+        synchronized (SharedPipeRegistry.class) {
+            List<String> previous = NODE_PARENTS.remove(nodeId);
+            if (previous != null) {
+                for (String parentHash : previous) {
+                    Map<String, Child> children = CHILDREN.get(parentHash);
+                    if (children == null) continue;
+                    children.remove(nodeId);
+                    if (children.isEmpty()) CHILDREN.remove(parentHash);
+                }
+            }
+            if (parentHashes.isEmpty()) return;
+
+            if (CHILDREN.size() > 1000) prune();
+            Child child = new Child(cmd.getStructuralHash(), node);
+            for (String parentHash : parentHashes) {
+                Map<String, Child> children = CHILDREN.get(parentHash);
+                if (children == null) {
+                    children = new HashMap<String, Child>();
+                    CHILDREN.put(parentHash, children);
+                }
+                children.put(nodeId, child);
+            }
+            NODE_PARENTS.put(nodeId, parentHashes);
+        }
+    }
+
+
+    private static void prune() {
+        Iterator<Map<String, Child>> it = CHILDREN.values().iterator();
+        while (it.hasNext()) {
+            Iterator<Child> cIt = it.next().values().iterator();
+            while (cIt.hasNext())
+                if (!cIt.next().isLive()) cIt.remove();
+        }
+        it = CHILDREN.values().iterator();
+        while (it.hasNext())
+            if (it.next().isEmpty()) it.remove();
+
+        long limit = System.currentTimeMillis() - MAX_AGE_MS;
+        Iterator<Shared> sIt = SHARED.values().iterator();
+        while (sIt.hasNext())
+            if (sIt.next().m_created < limit) sIt.remove();
+    }
+
+
+    /**
+     * @return structural hashes of the commands currently reading the output of cmd.
+     */
+    private static synchronized Set<String> getBranches(final CommandObject cmd) {
+        Set<String> branches = new HashSet<String>();
+        Map<String, Child> children = CHILDREN.get(cmd.getStructuralHash());
+        if (children != null)
+            for (Child child : children.values())
+                if (child.isLive()) branches.add(child.m_hash);
+        return branches;
+    }
+
+
+    /**
+     * Find the deepest shared prefix of the linear pipe ending in cmd.
+     *
+     * @return the command directly after the shared prefix on the way to
+     *         cmd, its only parent is the shared prefix. Null if no command
+     *         before cmd is read by more than one branch.
+     */
+    public static CommandObject findBranch(final CommandObject cmd) {
+        CommandObject branch = cmd;
+        while (true) {
+            List<CommandObject> parents = branch.getParentCmdObjectList();
+            if (parents.size() != 1) return null;
+
+            CommandObject parent = parents.get(0);
+            if (getBranches(parent).size() > 1) return branch;
+            branch = parent;
+        }
+    }
+
+
+    /**
+     * @param key identifies the prefix and the environment it is executed in.
+     * @return the entry for key, it must be locked while it is used.
+     */
+    public static synchronized Shared getShared(final String key) {
+        Shared s = SHARED.get(key);
+        if (s == null) {
+            s = new Shared();
+            SHARED.put(key, s);
+        }
+        return s;
+    }
+
+
+    /**
+     * Command registered by a node, the node is referenced weakly.
+     */
+    private static class Child {
+        private final String m_hash;
+        private final WeakReference<NodeContainer> m_node;
+
+        private Child(final String hash, final NodeContainer node) {
+            m_hash = hash;
+            m_node = new WeakReference<NodeContainer>(node);
+        }
+
+        /** @return false if the node was removed from its workflow */
+        private boolean isLive() {
+            NodeContainer node = m_node.get();
+            if (node == null) return false;
+            WorkflowManager wfm = node.getParent();
+            return wfm != null && wfm.containsNodeContainer(node.getID());
+        }
+    }
+
+
+    /**
+     * Materialized output of a shared prefix.
+     */
+    public static class Shared {
+        private String m_remoteFile;
+        private long m_created;
+        /** branches which have not yet read m_remoteFile */
+        private final Set<String> m_pending = new HashSet<String>();
+        /** remote files -> number of branches currently reading them */
+        private final Map<String, Integer> m_readers = new HashMap<String, Integer>();
+        /** remote files no longer read by any branch */
+        private final List<String> m_obsolete = new ArrayList<String>();
+        /** released when the branch executing the prefix is done, null if none is */
+        private CountDownLatch m_computing;
+
+        private Shared() {}
+
+        /**
+         * @return latch released when the branch executing the prefix is 
+         *         done, null if no branch executes it. Branches wait for it 
+         *         without holding the lock of this.
+         */
+        public CountDownLatch getComputing() {
+            return m_computing;
+        }
+
+        /** the calling branch executes the prefix, see {@link #endComputing()} */
+        public void startComputing() {
+            m_computing = new CountDownLatch(1);
+        }
+
+        /** the prefix was executed or failed, waiting branches continue */
+        public void endComputing() {
+            m_computing.countDown();
+            m_computing = null;
+        }
+
+        /**
+         * @param branch see {@link SharedPipeRegistry#findBranch(CommandObject)}
+         * @return the lease of the remote file with the output of the prefix 
+         *         if it can be used by branch, null if the prefix needs to be 
+         *         executed.
+         */
+        public Lease use(final CommandObject branch) {
+            if (m_remoteFile == null) return null;
+            if (System.currentTimeMillis() - m_created > MAX_AGE_MS
+                    || !m_pending.remove(branch.getStructuralHash())) {
+                // branch was executed before, the prefix might have new results
+                drop();
+                return null;
+            }
+
+            Lease lease = new Lease(this, m_remoteFile);
+            if (m_pending.isEmpty()) drop();
+            return lease;
+        }
+
+        /**
+         * Record the output of the prefix of branch, executed for branch.
+         * 
+         * @return the lease of remoteFile for branch.
+         */
+        public Lease set(final CommandObject branch, final String remoteFile) {
+            drop();
+            CommandObject prefix = branch.getParentCmdObjectList().get(0);
+            m_pending.clear();
+            m_pending.addAll(getBranches(prefix));
+            m_pending.remove(branch.getStructuralHash());
+            m_created = System.currentTimeMillis();
+            m_remoteFile = remoteFile;
+            Lease lease = new Lease(this, remoteFile);
+            if (m_pending.isEmpty()) drop();
+            return lease;
+        }
+
+        /**
+         * @return remote files which are no longer used and should be removed.
+         */
+        public List<String> takeObsolete() {
+            List<String> files = new ArrayList<String>(m_obsolete);
+            m_obsolete.clear();
+            return files;
+        }
+
+        /** the current file is not handed out anymore */
+        private void drop() {
+            if (m_remoteFile != null && !m_readers.containsKey(m_remoteFile))
+                m_obsolete.add(m_remoteFile);
+            m_remoteFile = null;
+        }
+
+        private void acquire(final String file) {
+            Integer n = m_readers.get(file);
+            m_readers.put(file, n == null ? 1 : n + 1);
+        }
+
+        private void release(final String file) {
+            int n = m_readers.remove(file) - 1;
+            if (n > 0)
+                m_readers.put(file, n);
+            else if (!file.equals(m_remoteFile))
+                m_obsolete.add(file);
+        }
+    }
+
+
+    /**
+     * Use of the materialized output of a prefix by one branch, must be
+     * released when the branch completed.
+     */
+    public static class Lease {
+        private final Shared m_shared;
+        private final String m_remoteFile;
+
+        private Lease(final Shared shared, final String remoteFile) {
+            m_shared = shared;
+            m_remoteFile = remoteFile;
+            shared.acquire(remoteFile);
+        }
+
+        public String getRemoteFile() {
+            return m_remoteFile;
+        }
+
+        /**
+         * @return remote files which are no longer used and should be removed.
+         */
+        public List<String> release() {
+            synchronized (m_shared) {
+                m_shared.release(m_remoteFile);
+                return m_shared.takeObsolete();
+            }
+        }
+    }
+}
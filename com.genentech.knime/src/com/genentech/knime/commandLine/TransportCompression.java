@@ -0,0 +1,174 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.commandLine;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.genentech.knime.ssh.PipedInputProducer;
+import com.genentech.knime.ssh.PipedOutputConsumer;
+
+/**
+ * Compression of the data transferred to and from remote commands.
+ *
+ * SSH compresses the whole ssh session with zlib. GZIP wraps the remote
+ * command as "gzip -dc | command | gzip -1c" and (de)compresses the streams
+ * of the exec channel in java, which also works if the server does not
+ * allow ssh compression.
+ *
+ * Compression is not worth the cpu time for small inputs, see
+ * {@link #isCompressed(File)}.
+ *
+ * @author albertgo @ Genentech
+ */
+public enum TransportCompression {
+    NONE("none"),
+    SSH("ssh (zlib)"),
+    GZIP("gzip");
+
+    /** inputs smaller than this are sent uncompressed */
+    public static final long MIN_COMPRESS_BYTES = 64 * 1024;
+
+    private static final int BUF_SIZE = 64 * 1024;
+
+    private final String m_label;
+
+
+    private TransportCompression(final String label) {
+        m_label = label;
+    }
+
+
+    /** label displayed in the dialog */
+    @Override
+    public String toString() {
+        return m_label;
+    }
+
+
+    /**
+     * @return NONE if name is not a known compression, e.g. because the
+     *         settings were written by a newer version.
+     */
+    public static TransportCompression fromName(final String name) {
+        for (TransportCompression c : values())
+            if (c.name().equalsIgnoreCase(name)) return c;
+        return NONE;
+    }
+
+
+    /**
+     * Decide if the transfer of a command with inFile as input is compressed.
+     *
+     * A processor with a small input will usually also produce a small output,
+     * so in that case neither direction is compressed. Commands without input
+     * are always compressed as their output size is not known in advance.
+     *
+     * @param inFile stdin of the command, may be null.
+     */
+    public boolean isCompressed(final File inFile) {
+        if (this == NONE) return false;
+        return inFile == null || inFile.length() >= MIN_COMPRESS_BYTES;
+    }
+
+
+    /**
+     * Wrap the remote command line so that it reads gzipped stdin (if
+     * hasInput) and writes gzipped stdout.
+     *
+     * tcsh returns a non zero status if any command of a pipe fails so
+     * the status of the command is not lost.
+     */
+    public static String wrapGzipCommand(final String cmd, final boolean hasInput) {
+        return (hasInput ? "gzip -dc | " : "") + cmd + " | gzip -1c";
+    }
+
+
+    /**
+     * @return producer which streams inFile gzip compressed.
+     */
+    public static PipedInputProducer createGzipProducer(final File inFile) {
+        return new PipedInputProducer("GNE-SSH-Gzip-Input", new PipedInputProducer.Producer() {
+            @Override
+            public void write(final OutputStream out) throws Exception {
+                InputStream in = new BufferedInputStream(new FileInputStream(inFile), BUF_SIZE);
+                try {
+                    GZIPOutputStream gz = new GZIPOutputStream(out, BUF_SIZE) {
+                        {
+                            def.setLevel(Deflater.BEST_SPEED);
+                        }
+                    };
+                    copy(in, gz);
+                    gz.finish();
+                } finally {
+                    in.close();
+                }
+            }
+        });
+    }
+
+
+    /**
+     * @return consumer which decompresses what is written to it into out
+     *         and closes out at the end.
+     */
+    public static PipedOutputConsumer<Long> createGunzipConsumer(final OutputStream out) {
+        return new PipedOutputConsumer<Long>("GNE-SSH-Gunzip-Output",
+                new PipedOutputConsumer.Consumer<Long>() {
+                    @Override
+                    public Long read(final InputStream in) throws Exception {
+                        try {
+                            // nothing is written if the remote shell failed before gzip started
+                            PushbackInputStream pin = new PushbackInputStream(in);
+                            int first = pin.read();
+                            if (first < 0) return 0L;
+                            pin.unread(first);
+
+                            return copy(new GZIPInputStream(pin, BUF_SIZE), out);
+                        } finally {
+                            out.close();
+                        }
+                    }
+                });
+    }
+
+
+    private static long copy(final InputStream in, final OutputStream out) throws IOException {
+        byte[] buf = new byte[BUF_SIZE];
+        long total = 0;
+        int len;
+        while ((len = in.read(buf)) > 0) {
+            out.write(buf, 0, len);
+            total += len;
+        }
+        return total;
+    }
+}
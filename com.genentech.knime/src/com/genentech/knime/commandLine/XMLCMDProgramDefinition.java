@@ -44,14 +44,16 @@ import com.genentech.knime.Settings;
  */
 public class XMLCMDProgramDefinition extends CMDProgramDefinition {
     private final String helpText;
+    private final boolean cacheable;
 
     private XMLCMDProgramDefinition(final String name, final String label, final String command,
             final String subFolder, final CMDPortType[] inPorts, final CMDPortType[] outPort,
             final String inOpt, final String outOpt, final String defOpts,
-            final String helpFile) {
+            final String helpFile, final boolean cacheable) {
         super(name, label, command, subFolder, inPorts, outPort, inOpt, outOpt, defOpts);
 
         this.helpText = readHelpFile(helpFile);
+        this.cacheable = cacheable;
     }
 
     @SuppressWarnings("unchecked")
@@ -114,6 +116,10 @@ public class XMLCMDProgramDefinition extends CMDProgramDefinition {
             if( li >1 ) lbl = lbl.substring(0,li);
         }
         
+        String cacheable = cmdElement.getAttributeValue("cacheable");
+        boolean isCacheable = cacheable == null 
+                || !(cacheable.toLowerCase().startsWith("n") || cacheable.equalsIgnoreCase("false"));
+
         String folder = cmdElement.getAttributeValue("subfolder");
         if( folder == null ) folder = "";
         folder = folder.trim();
@@ -134,7 +140,7 @@ public class XMLCMDProgramDefinition extends CMDProgramDefinition {
             throw new IllegalArgumentException(sb.toString());
         }
 
-        return new XMLCMDProgramDefinition(n, lbl, cmd, folder, iPorts, oPorts, in, out, def, hf);
+        return new XMLCMDProgramDefinition(n, lbl, cmd, folder, iPorts, oPorts, in, out, def, hf, isCacheable);
     }
 
     static private CMDPortType[] parsePorts(final String portStr,
@@ -160,6 +166,11 @@ public class XMLCMDProgramDefinition extends CMDProgramDefinition {
     public String getHelpTxt() {
         return helpText;
     }
+
+    @Override
+    public boolean isCacheable() {
+        return cacheable;
+    }
     
     private static final String readHelpFile(String helpFile) {
         try {
@@ -41,6 +41,8 @@ public final class CmdConfiguration {
 	private final CMDProgramDefinition m_programDefinition;
     private String m_userOptions;
     private String m_mysubOptions;
+    /** number of concurrent remote jobs the input is split into, 1 = no splitting */
+    private int m_parallelJobs = 1;
 
     /**
      *  */
@@ -57,6 +59,11 @@ public final class CmdConfiguration {
 		return m_mysubOptions;
 	}
 
+    /** @return number of concurrent remote jobs the input is split into */
+    public int getParallelJobs() {
+        return m_parallelJobs;
+    }
+
     /** @return the program definition */
     public CMDProgramDefinition getProgramDefinition() {
         return m_programDefinition;
@@ -71,19 +78,29 @@ public final class CmdConfiguration {
         m_mysubOptions = mysubOptions;
     }
 
+    public void setParallelJobs(final int parallelJobs) {
+        m_parallelJobs = parallelJobs;
+    }
+
     public void loadInModel(final NodeSettingsRO settings) throws InvalidSettingsException {
         m_userOptions  = settings.getString("userOptions");
     	m_mysubOptions = settings.getString("mysubOptions", m_programDefinition.getDefaultMysubOpts());
+    	m_parallelJobs = settings.getInt("parallelJobs", 1);
+    	if (m_parallelJobs < 1) {
+    	    throw new InvalidSettingsException("Number of parallel jobs must be at least 1");
+    	}
     }
 
     public void loadInDialog(final NodeSettingsRO settings) {
         m_userOptions = settings.getString("userOptions", m_programDefinition.getDefaultOpts());
         m_mysubOptions = settings.getString("mysubOptions", m_programDefinition.getDefaultMysubOpts());
+        m_parallelJobs = Math.max(1, settings.getInt("parallelJobs", 1));
     }
 
     public void save(final NodeSettingsWO settings) {
         settings.addString("userOptions",  m_userOptions);
         settings.addString("mysubOptions", m_mysubOptions);
+        settings.addInt("parallelJobs", m_parallelJobs);
     }
 
 }
@@ -34,14 +34,17 @@ import javax.swing.BoxLayout;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
 
 import org.knime.core.node.FlowVariableModel;
 import org.knime.core.node.NodeDialogPane;
 import org.knime.core.node.workflow.FlowVariable;
 
 import com.genentech.knime.commandLine.CMDProgramDefinition;
+import com.genentech.knime.commandLine.CommandType;
 import com.genentech.knime.commandLine.KnimeSDFCMDBridgeNodeModel;
 import com.genentech.knime.commandLine.KnimeSDFCMDBridgeSettings;
 
@@ -59,6 +62,8 @@ public class CmdConfigurationPanel extends JPanel {
 
     private final JTextArea m_userOptions  = new JTextArea(3,50);
     private final JTextField m_mysubOptions = new JTextField(40);
+    private final JSpinner m_parallelJobs = new JSpinner(new SpinnerNumberModel(1, 1, 999, 1));
+    private final boolean m_showParallelJobs;
 
     /**
      * Creates a new tab.
@@ -144,6 +149,20 @@ public class CmdConfigurationPanel extends JPanel {
         tmpBox.add(mysubSettings);
         optBox.add(tmpBox);
         
+        //////////////////////////////////////////////////////////////////
+        // splitting the input only makes sense for sdf in sdf out commands
+        m_showParallelJobs = pDefinition.getType() == CommandType.PROCESSOR;
+        if (m_showParallelJobs) {
+            tmpBox = Box.createHorizontalBox();
+            tmpBox.add(Box.createRigidArea(five10));
+            tmpBox.add(new JLabel("Parallel jobs (split input, only if records are processed independently):"));
+            tmpBox.add(Box.createRigidArea(five10));
+            m_parallelJobs.setMaximumSize(m_parallelJobs.getPreferredSize());
+            tmpBox.add(m_parallelJobs);
+            tmpBox.add(Box.createHorizontalGlue());
+            optBox.add(tmpBox);
+        }
+        
         // create the panel
         add(optBox);
     }
@@ -156,6 +175,7 @@ public class CmdConfigurationPanel extends JPanel {
     public void loadSettings(final CmdConfiguration configuration) {
         m_userOptions.setText(configuration.getUserOptions());
         m_mysubOptions.setText(configuration.getMysubOptions());
+        m_parallelJobs.setValue(configuration.getParallelJobs());
      }
 
     /**
@@ -167,6 +187,9 @@ public class CmdConfigurationPanel extends JPanel {
     public void saveSettings(final CmdConfiguration settings) {
         settings.setUserOptions(m_userOptions.getText());
         settings.setMysubOptions(m_mysubOptions.getText());
+        if (m_showParallelJobs) {
+            settings.setParallelJobs(((Number) m_parallelJobs.getValue()).intValue());
+        }
     }
 
 }
@@ -88,7 +88,7 @@ public class ConsumerCmdSdfNodeModel extends AbstractCmdSdfNodeModel {
               RuntimeException mainErr = null;
               try{
                   if (spec.getSSHConfiguration().isExecuteSSH()) {
-                      sshRes = runSSHExecute(outSpec, exec, port.getSDFile());
+                      sshRes = runSSHExecuteWithInput(outSpec, exec, port);
                   } else {
                       tmpFile  = File.createTempFile("SDFCmd_", ".sdf");
                       sshRes = runSSHExecute(outSpec, exec, tmpFile);
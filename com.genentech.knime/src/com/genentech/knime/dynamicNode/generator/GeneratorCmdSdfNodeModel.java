@@ -37,7 +37,6 @@ import com.genentech.knime.commandLine.CommandObject;
 import com.genentech.knime.commandLine.SDFCmdPortObject;
 import com.genentech.knime.commandLine.SDFCmdPortObjectSpec;
 import com.genentech.knime.commandLine.SSHConfiguration;
-import com.genentech.knime.commandLine.SSHExecutionResult;
 import com.genentech.knime.dynamicNode.AbstractCmdSdfNodeModel;
 
 /**
@@ -76,14 +75,10 @@ public class GeneratorCmdSdfNodeModel extends AbstractCmdSdfNodeModel {
             throws Exception {
         CommandObject command = createCommandObject();
         SDFCmdPortObjectSpec spec = new SDFCmdPortObjectSpec( command, m_sshConfiguration);
-        final File sdfFile;
         if (spec.getSSHConfiguration().isExecuteSSH()) {
-            SSHExecutionResult sshRes = runSSHExecute(spec, exec, null);
-            sdfFile = sshRes.getStdOut();
-        } else {
-            sdfFile = null;
+            return new PortObject[]{runSSHExecuteToPort(spec, exec, null)};
         }
-        return new PortObject[]{new SDFCmdPortObject(spec, sdfFile)};
+        return new PortObject[]{new SDFCmdPortObject(spec, (File) null)};
     }
 
     /** {@inheritDoc} */
@@ -49,6 +49,7 @@ import org.knime.core.node.workflow.FlowVariable;
 
 import com.genentech.knime.commandLine.SSHConfiguration;
 import com.genentech.knime.commandLine.SSHExecutionHelper;
+import com.genentech.knime.commandLine.TransportCompression;
 import com.genentech.knime.dynamicNode.GNEFlowVariableModelButton;
 import com.jcraft.jsch.Session;
 
@@ -81,6 +82,13 @@ public class GeneratorSSHSettingsPanel extends JPanel {
 
     private final JCheckBox m_executeSSH = new JCheckBox("Execute in each node");
     
+    private final JCheckBox m_remoteIntermediates = new JCheckBox("Keep results on remote host");
+    
+    private final JCheckBox m_detached = new JCheckBox("Detached cluster jobs");
+    
+    private final JComboBox<TransportCompression> m_compression
+                = new JComboBox<TransportCompression>(TransportCompression.values());
+    
     /**
      * Creates a new tab.
      */
@@ -107,7 +115,8 @@ public class GeneratorSSHSettingsPanel extends JPanel {
         hostBox.add(new JLabel("Host:"));
         hostBox.add(Box.createHorizontalStrut(3));
         hostBox.add(m_host);
-        m_host.setToolTipText("Enter hostname or IP address");
+        m_host.setToolTipText("Enter hostname or IP address, a comma separated list of hosts sharing "
+                + "the home directory to balance the load, \"local\" to execute commands on this computer");
         final FlowVariableModel fvmHost = parent.createFlowVariableModel(
         		new String[]{"sshConfiguration", "remote_host"}, FlowVariable.Type.STRING);
         @SuppressWarnings("serial")
@@ -213,6 +222,28 @@ public class GeneratorSSHSettingsPanel extends JPanel {
         tmpBox = Box.createHorizontalBox();
         tmpBox.add(Box.createHorizontalStrut(8));
         tmpBox.add(m_executeSSH);
+        tmpBox.add(Box.createHorizontalStrut(8));
+        m_remoteIntermediates.setToolTipText("Results of each node stay in a scratch directory on "
+                + "the remote host and are only downloaded when needed locally.");
+        tmpBox.add(m_remoteIntermediates);
+        m_executeSSH.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                m_remoteIntermediates.setEnabled(m_executeSSH.isSelected());
+            }
+        });
+        tmpBox.add(Box.createHorizontalStrut(8));
+        m_detached.setToolTipText("Submit long running commands as background cluster jobs. "
+                + "No connection is kept open while the job is running, the result is "
+                + "downloaded when the job completed.");
+        tmpBox.add(m_detached);
+        tmpBox.add(Box.createHorizontalStrut(15));
+        lbl = new JLabel("Transfer Compression: ");
+        lbl.setToolTipText("Compress sdf data sent to and from the remote host, "
+                         + "useful on slow networks. Small inputs are not compressed.");
+        tmpBox.add(lbl);
+        m_compression.setMaximumSize( m_compression.getPreferredSize() );
+        tmpBox.add(m_compression);
         tmpBox.add(Box.createGlue());
         optBox.add(tmpBox);
 
@@ -248,6 +279,10 @@ public class GeneratorSSHSettingsPanel extends JPanel {
         m_errorLogFile.setText(settings.getErrorLogFile());
         m_mode.setSelectedItem(settings.getRunMode());
         m_executeSSH.setSelected(settings.isExecuteSSH());
+        m_remoteIntermediates.setSelected(settings.isRemoteIntermediates());
+        m_remoteIntermediates.setEnabled(settings.isExecuteSSH());
+        m_compression.setSelectedItem(settings.getCompression());
+        m_detached.setSelected(settings.isDetached());
      }
 
     /**
@@ -287,17 +322,37 @@ public class GeneratorSSHSettingsPanel extends JPanel {
         String errorLogFile = m_errorLogFile.getText().trim();
         
         boolean executeSSH = m_executeSSH.isSelected();
+        TransportCompression compression = (TransportCompression) m_compression.getSelectedItem();
         
         return new SSHConfiguration(host, portNr, "", "", "", timeout, 
-                workDir, mode, errorLogFile, executeSSH);
+                workDir, mode, errorLogFile, executeSSH, compression, 
+                m_remoteIntermediates.isSelected(), m_detached.isSelected());
     }
 
     private void checkConnection() {
         Session con = null;
         try {
             SSHConfiguration s = saveSettings();
-            con = SSHExecutionHelper.getConnectedSession(s);
-            JOptionPane.showMessageDialog(this, "Looks good.");
+            if (s.isLocal()) {
+                JOptionPane.showMessageDialog(this, "Commands are executed on this computer.");
+                return;
+            }
+            // every host of a pool must be usable
+            StringBuilder failed = new StringBuilder();
+            for (String host : s.getRemoteHosts()) {
+                try {
+                    con = SSHExecutionHelper.getConnectedSession(s.forHost(host));
+                } catch (Exception e) {
+                    failed.append(host).append(": ").append(e.getMessage()).append('\n');
+                    continue;
+                }
+                SSHExecutionHelper.releaseSession(con);
+                con = null;
+            }
+            if (failed.length() > 0) 
+                JOptionPane.showMessageDialog(this, "Connection failed:\n" + failed);
+            else
+                JOptionPane.showMessageDialog(this, "Looks good.");
         } catch (InvalidSettingsException ise) {
             JOptionPane.showMessageDialog(this,
                     "Can't connect - invalid settings: " + ise.getMessage());
@@ -310,7 +365,7 @@ public class GeneratorSSHSettingsPanel extends JPanel {
         } finally
         {   if( con != null ) {
                 try {
-                    con.disconnect();
+                    SSHExecutionHelper.releaseSession(con);
                     con = null;
                 } catch( Error e ) {
                     System.err.println(e.getMessage()); // avoid hiding other exceptions
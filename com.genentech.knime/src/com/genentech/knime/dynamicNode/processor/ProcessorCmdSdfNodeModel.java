@@ -69,13 +69,17 @@ public class ProcessorCmdSdfNodeModel extends AbstractCmdSdfNodeModel {
         SDFCmdPortObjectSpec spec = port.getSpec();
         SDFCmdPortObjectSpec outSpec = new SDFCmdPortObjectSpec(spec,
                 createCommandObject());
-        File sdfFile = null;
         if (spec.getSSHConfiguration().isExecuteSSH()) {
             
-            SSHExecutionResult sshRes = runSSHExecute(outSpec, exec, port.getSDFile());
-            sdfFile = sshRes.getStdOut();
+            int nJobs = getCmdConfiguration().getParallelJobs();
+            if (nJobs > 1 && !port.isRemote() && port.getSDFile() != null) {
+                SSHExecutionResult sshRes = 
+                        runSSHExecuteChunked(outSpec, exec, port.getSDFile(), nJobs);
+                return new PortObject[]{new SDFCmdPortObject(outSpec, sshRes.getStdOut())};
+            }
+            return new PortObject[]{runSSHExecuteToPort(outSpec, exec, port)};
         }
-        return new PortObject[]{new SDFCmdPortObject(outSpec, sdfFile)};
+        return new PortObject[]{new SDFCmdPortObject(outSpec, (File) null)};
     }
 
 }
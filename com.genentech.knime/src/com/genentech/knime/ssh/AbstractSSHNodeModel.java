@@ -191,13 +191,33 @@ public abstract class AbstractSSHNodeModel extends NodeModel {
          
          File tmpInFile = null;
          InputStream tmpInStrm = null;
-         if (inData[0] != null) {
+         PipedInputProducer inProducer = null;
+         if (inData[0] != null && Settings.SSHStreamInput 
+                 && canStreamInput(inData[0].getDataTableSpec())) {
+             // remote command starts reading while the table is still being written
+             final BufferedDataTable inTable = inData[0];
+             final ExecutionMonitor inExec = exec.createSubProgress(0);
+             inProducer = new PipedInputProducer("GNE-SSH-Input-" + getClass().getSimpleName(),
+                     new PipedInputProducer.Producer() {
+                         @Override
+                         public void write(final OutputStream out) throws Exception {
+                             writeInput(inExec, inTable, out);
+                         }
+                     });
+         } else if (inData[0] != null) {
         	 tmpInFile = writeTMPInputFile(exec, inData[0]);
         	 tmpInFile.deleteOnExit();
         	 tmpInStrm = new BufferedInputStream(new FileInputStream(tmpInFile)); 
          }
-         File tmpOutFile = File.createTempFile("ExtSSHNodeOutputTable", getOutFileExtention());
-         OutputStream tmpOutStrm = new BufferedOutputStream(new FileOutputStream(tmpOutFile));
+         File tmpOutFile = null;
+         OutputStream tmpOutStrm = null;
+         PipedOutputConsumer<BufferedDataTable> outConsumer = null;
+         if (Settings.SSHStreamOutput)
+             outConsumer = createOutputConsumer(exec);
+         if (outConsumer == null) {
+             tmpOutFile = File.createTempFile("ExtSSHNodeOutputTable", getOutFileExtention());
+             tmpOutStrm = new BufferedOutputStream(new FileOutputStream(tmpOutFile));
+         }
          
          File tmpErrFile = File.createTempFile("ExtSSHNodeErrTile", "txt");
          OutputStream tmpErrStrm = new BufferedOutputStream(new FileOutputStream(tmpErrFile));
@@ -233,11 +253,38 @@ public abstract class AbstractSSHNodeModel extends NodeModel {
             
             // replace $inFile and $outFile with paths
             execChannel.setCommand(mysub);
+            if (inProducer != null) {
+               exec.setMessage("Streaming input table to " + configSettings.getRemoteHost());
+               tmpInStrm = inProducer.start();
+            }
+            if (outConsumer != null) {
+               // result table is built while the remote command is running
+               tmpOutStrm = outConsumer.start();
+            }
             if (tmpInStrm != null) {
             execChannel.setInputStream(tmpInStrm);
             }
-            execChannel.setErrStream(tmpErrStrm);
-            execChannel.setOutputStream(tmpOutStrm);
+            ChannelCompletion completion = new ChannelCompletion(execChannel);
+            execChannel.setErrStream(completion.watch(tmpErrStrm));
+            execChannel.setOutputStream(completion.watch(tmpOutStrm));
+            if (inProducer != null) {
+               final PipedInputProducer producer = inProducer;
+               completion.addCheck(new ChannelCompletion.Check() {
+                  @Override
+                  public void check() throws Exception {
+                     producer.checkFailed();
+                  }
+               });
+            }
+            if (outConsumer != null) {
+               final PipedOutputConsumer<BufferedDataTable> consumer = outConsumer;
+               completion.addCheck(new ChannelCompletion.Check() {
+                  @Override
+                  public void check() throws Exception {
+                     consumer.checkFailed();
+                  }
+               });
+            }
             // once more before take-off
             exec.checkCanceled();
             exec.setMessage("Executing on host " + configSettings.getRemoteHost());
@@ -246,12 +293,13 @@ public abstract class AbstractSSHNodeModel extends NodeModel {
             LOGGER.debug("Executing remotely command: '" + cmd + "'");
             execChannel.connect(configSettings.getTimeoutMilliSec());
             exec.setMessage("Waiting for remote command to finish");
-            while (!execChannel.isClosed()) {
-               exec.checkCanceled();
-               Thread.sleep(500);
-            }
+            completion.await(exec);
             LOGGER.debug("SSH execution finished.");
             exec.checkCanceled();
+            if (inProducer != null) {
+               tmpInStrm.close();
+               inProducer.join();
+            }
 
          } finally {
             if (execChannel != null && execChannel.isConnected()) {
@@ -259,13 +307,15 @@ public abstract class AbstractSSHNodeModel extends NodeModel {
             }
             if (tmpInStrm != null) {
             tmpInStrm.close();
-            tmpInFile.delete();
-            if( tempFile != null) tempFile.delete();
+            if( tmpInFile != null) tmpInFile.delete();
          }
-            tmpOutStrm.close();
+            if( tempFile != null) tempFile.delete();
+            if (tmpOutStrm != null) tmpOutStrm.close();
          }
          
-         return readOutputFiles(exec, tmpOutFile, tmpErrFile);
+         BufferedDataTable outTable = null;
+         if (outConsumer != null) outTable = outConsumer.join();
+         return readOutputFiles(exec, tmpOutFile, outTable, tmpErrFile);
 
       } catch (Exception e) {
          if ((!(e instanceof CanceledExecutionException))
@@ -275,9 +325,7 @@ public abstract class AbstractSSHNodeModel extends NodeModel {
          throw e;
 
       } finally {
-         if (session != null && session.isConnected()) {
-            session.disconnect();
-         }
+         SSHUtil.releaseSession(session);
       }
 
    }
@@ -304,18 +352,23 @@ public abstract class AbstractSSHNodeModel extends NodeModel {
     * ssh call has resulted in the stdout and stderr to be written into tmp files.
     * 
     * Read the files and create {@see BufferedDataTable}s.
-    * @param tmpOutFile file containing the stdout
+    * @param tmpOutFile file containing the stdout, null if outTable is given
+    * @param outTable table already built from stdout while it arrived
     * @param tmpErrFile file containing the stderr
     */
    private BufferedDataTable[] readOutputFiles(
-         final ExecutionContext exec, File tmpOutFile, File tmpErrFile) 
+         final ExecutionContext exec, File tmpOutFile, BufferedDataTable outTable, File tmpErrFile) 
    throws MalformedURLException, IOException, CanceledExecutionException {
       
       BufferedDataTable[] result = new BufferedDataTable[2];
-      exec.setMessage("Analyzing result file...");
       exec.checkCanceled();
 
-      result[0] = parseOutput(exec, tmpOutFile);
+      if (outTable != null) {
+         result[0] = outTable;
+      } else {
+         exec.setMessage("Analyzing result file...");
+         result[0] = parseOutput(exec, tmpOutFile);
+      }
       
       exec.setMessage("Reading SdtErr... ");
       FileReaderNodeSettings frns = new FileReaderNodeSettings();
@@ -327,7 +380,7 @@ public abstract class AbstractSSHNodeModel extends NodeModel {
       result[1] = exec.createBufferedDataTables(new DataTable[] { ft }, exec)[0];
       exec.checkCanceled();
    
-      tmpOutFile.delete();
+      if (tmpOutFile != null) tmpOutFile.delete();
       tmpErrFile.delete();
       return result;
    }
@@ -344,8 +397,44 @@ public abstract class AbstractSSHNodeModel extends NodeModel {
     * sent to the stdin of the ssh command.
     * @param tmpInFile empty file in tmp folder.
     */
-   public abstract void writeTMPInFile(ExecutionContext exec, 
-         BufferedDataTable bufferedDataTable, File tmpInFile) throws IOException, CanceledExecutionException;
+   public void writeTMPInFile(ExecutionContext exec, 
+         BufferedDataTable bufferedDataTable, File tmpInFile) throws IOException, CanceledExecutionException {
+      exec.setMessage("Writing input table to (local) temp file...");
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpInFile));
+      try {
+         writeInput(exec.createSubProgress(0), bufferedDataTable, out);
+      } finally {
+         out.close();
+      }
+   }
+
+   /** Overwrite to write the input to a temp file if {@link #writeInput}
+    * does not support it.
+    * 
+    * @return true if the input table can be streamed to the ssh command.
+    */
+   public boolean canStreamInput(DataTableSpec inSpec) {
+      return true;
+   }
+
+   /** Write data in bufferedDataTable to out in the format expected on the
+    * stdin of the ssh command and close out.
+    * 
+    * This might be called from a separate thread while the ssh command is
+    * already reading out.
+    */
+   public abstract void writeInput(ExecutionMonitor exec, 
+         BufferedDataTable bufferedDataTable, OutputStream out) throws IOException, CanceledExecutionException;
+
+   /** Overwrite to parse the stdout of the ssh command while it arrives.
+    * 
+    * @return consumer building the table for the first output port from the
+    *         stdout of the ssh command or null to write stdout to a temp file
+    *         which is passed to {@link #parseOutput(ExecutionContext, File)}.
+    */
+   public PipedOutputConsumer<BufferedDataTable> createOutputConsumer(ExecutionContext exec) {
+      return null;
+   }
 
    /** Parse the stdout put of the ssh command and create the {@see BufferedDataTable}
     * which is passed from the first output port.
@@ -0,0 +1,171 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.ssh;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.knime.core.node.ExecutionMonitor;
+
+import com.jcraft.jsch.Channel;
+
+/**
+ * Waits for a jsch {@link Channel} to complete without polling.
+ *
+ * The stdout and stderr streams passed to the channel are wrapped with
+ * {@link #watch(OutputStream)}. Jsch closes them when the remote side closes
+ * the channel, after the exit status has been received, which wakes up the
+ * thread in {@link #await(ExecutionMonitor)}.
+ *
+ * Cancellation of the node and additional {@link Check}s are evaluated by a
+ * shared timer thread so that the waiting thread does not need to wake up
+ * periodically.
+ *
+ * @author albertgo @ Genentech
+ */
+public class ChannelCompletion {
+
+    /** interval in which the cancel status and checks are evaluated */
+    private static final long CHECK_INTERVAL_MS = 100;
+
+    private static final ScheduledExecutorService TIMER =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(r, "GNE-SSH-Channel-Watchdog");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+    /** additional condition checked while waiting */
+    public interface Check {
+        /** @throws Exception to abort waiting for the channel. */
+        void check() throws Exception;
+    }
+
+    private final Channel m_channel;
+    private final AtomicInteger m_openStreams = new AtomicInteger();
+    private final CountDownLatch m_done = new CountDownLatch(1);
+    private final List<Check> m_checks = new ArrayList<Check>();
+    private volatile Exception m_failure;
+
+
+    public ChannelCompletion(final Channel channel) {
+        m_channel = channel;
+    }
+
+
+    /**
+     * Wrap a stream passed to the channel. Completion is signalled when all
+     * watched streams have been closed.
+     */
+    public OutputStream watch(final OutputStream out) {
+        m_openStreams.incrementAndGet();
+        return new FilterOutputStream(out) {
+            private boolean m_closed = false;
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    synchronized (this) {
+                        if (m_closed) return;
+                        m_closed = true;
+                    }
+                    if (m_openStreams.decrementAndGet() == 0)
+                        m_done.countDown();
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Add a check to be run periodically while waiting.
+     */
+    public void addCheck(final Check check) {
+        m_checks.add(check);
+    }
+
+
+    /**
+     * Wait until the channel is complete.
+     *
+     * @return the exit status of the remote command.
+     * @throws Exception if exec was canceled or a {@link Check} failed.
+     */
+    public int await(final ExecutionMonitor exec) throws Exception {
+        ScheduledFuture<?> watchdog = TIMER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    exec.checkCanceled();
+                    for (Check c : m_checks)
+                        c.check();
+                } catch (Exception e) {
+                    m_failure = e;
+                    m_done.countDown();
+                    return;
+                }
+
+                // fallback in case a stream was not closed by jsch
+                if (m_channel.isClosed())
+                    m_done.countDown();
+            }
+        }, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        try {
+            m_done.await();
+        } finally {
+            watchdog.cancel(false);
+        }
+
+        Exception e = m_failure;
+        if (e != null) throw e;
+
+        // the exit status is normally received before the streams are closed
+        int status = m_channel.getExitStatus();
+        for (int i = 0; status == -1 && !m_channel.isClosed() && i < 100; i++) {
+            Thread.sleep(10);
+            status = m_channel.getExitStatus();
+        }
+        return status;
+    }
+}
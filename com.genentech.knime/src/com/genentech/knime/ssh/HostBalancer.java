@@ -0,0 +1,237 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.ssh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.node.NodeLogger;
+
+import com.genentech.knime.ssh.SSHSessionPool.SessionKey;
+
+/**
+ * Decides which host of a host pool gets the next new ssh session.
+ *
+ * Hosts are ordered by the number of sessions currently leased to them or,
+ * if selection is by latency, by the recent time needed to connect and
+ * authenticate an ssh session. Hosts which refused the last connection or
+ * failed the last health check are tried last. Equally good hosts are
+ * tried in random order so that several KNIME instances do not all pick
+ * the first host of the list.
+ *
+ * Every host which was part of a pool is checked in the background every
+ * {@link com.genentech.knime.Settings#SSHHealthCheckInterval} seconds by a
+ * {@link Probe} which sends an ssh keep alive on a session already connected
+ * to the host, no new connections are opened. A failed host without session
+ * is tried again by the next lease once it was down for a full interval.
+ *
+ * @author albertgo @ Genentech
+ */
+final class HostBalancer {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(HostBalancer.class);
+
+    /** weight of a new latency sample in the moving average */
+    private static final double LATENCY_WEIGHT = 0.3;
+
+    private final boolean m_byLatency;
+    private final long m_checkIntervalMs;
+    private final Probe m_probe;
+    private final Map<String, HostStats> m_hosts = new HashMap<String, HostStats>();
+    private ScheduledExecutorService m_checker;
+
+
+    /**
+     * @param byLatency if true hosts are ordered by latency, otherwise by active sessions.
+     * @param checkIntervalMs interval of the health checks, 0 to disable them.
+     * @param probe checks a host during the health checks.
+     */
+    HostBalancer(final boolean byLatency, final long checkIntervalMs, final Probe probe) {
+        m_byLatency = byLatency;
+        m_checkIntervalMs = checkIntervalMs;
+        m_probe = probe;
+    }
+
+
+    /** checks a host on an existing connection */
+    interface Probe {
+        /**
+         * @return true if the host answered, false if it failed, null if
+         *         there is no connection to check it on.
+         */
+        Boolean check(String host, int port);
+    }
+
+
+    /**
+     * @param active number of leased sessions per host:port.
+     * @return keys in the order in which connections should be tried.
+     */
+    List<SessionKey> order(final List<SessionKey> keys, final Map<String, Integer> active) {
+        // snapshot, the health checks change the stats while sorting
+        final Map<SessionKey, Integer> sessions = new HashMap<SessionKey, Integer>();
+        final Map<SessionKey, Boolean> down = new HashMap<SessionKey, Boolean>();
+        final Map<SessionKey, Double> latency = new HashMap<SessionKey, Double>();
+        synchronized (this) {
+            for (SessionKey key : keys) {
+                String host = hostId(key);
+                Integer n = active.get(host);
+                HostStats st = register(host, key);
+                sessions.put(key, n == null ? 0 : n);
+                down.put(key, st.m_down);
+                latency.put(key, st.m_latencyMs);
+            }
+        }
+
+        List<SessionKey> ordered = new ArrayList<SessionKey>(keys);
+        Collections.shuffle(ordered);
+        Collections.sort(ordered, new Comparator<SessionKey>() {
+            @Override
+            public int compare(final SessionKey k1, final SessionKey k2) {
+                int byDown = Boolean.compare(down.get(k1), down.get(k2));
+                if (byDown != 0) return byDown;
+
+                int bySessions = Integer.compare(sessions.get(k1), sessions.get(k2));
+                int byLatency = Double.compare(latency.get(k1), latency.get(k2));
+                if (m_byLatency) return byLatency != 0 ? byLatency : bySessions;
+                return bySessions;
+            }
+        });
+        return ordered;
+    }
+
+
+    /** the host refused or dropped a connection */
+    synchronized void recordFailure(final SessionKey key) {
+        HostStats st = m_hosts.get(hostId(key));
+        if (st == null) return;
+        if (!st.m_down) st.m_downSince = System.currentTimeMillis();
+        st.m_down = true;
+    }
+
+
+    /**
+     * @param connectMs time needed to connect and authenticate the new session.
+     */
+    synchronized void recordSuccess(final SessionKey key, final double connectMs) {
+        HostStats st = m_hosts.get(hostId(key));
+        if (st == null) return;
+        st.m_down = false;
+        st.m_latencyMs = st.m_latencyMs == 0 ? connectMs
+                       : (1 - LATENCY_WEIGHT) * st.m_latencyMs + LATENCY_WEIGHT * connectMs;
+    }
+
+
+    synchronized void shutdown() {
+        if (m_checker != null) m_checker.shutdownNow();
+        m_checker = null;
+    }
+
+
+    private HostStats register(final String host, final SessionKey key) {
+        HostStats st = m_hosts.get(host);
+        if (st != null) return st;
+
+        st = new HostStats(key.getHost(), key.getPort());
+        m_hosts.put(host, st);
+        if (m_checkIntervalMs <= 0) return st;
+
+        if (m_checker == null) {
+            m_checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(r, "GNE-SSH-HealthCheck");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        final HostStats probed = st;
+        m_checker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                probe(probed);
+            }
+        }, 0, m_checkIntervalMs, TimeUnit.MILLISECONDS);
+        return st;
+    }
+
+
+    /** keep alive on a connected session, the latency is sampled when connecting */
+    private void probe(final HostStats st) {
+        Boolean alive;
+        try {
+            alive = m_probe.check(st.m_host, st.m_port);
+        } catch (Exception e) {
+            LOGGER.debug("Health check of " + st.m_host + " failed: " + e.getMessage());
+            alive = Boolean.FALSE;
+        }
+
+        synchronized (this) {
+            if (alive == null) {
+                // nothing to check on, let the next lease try a host which was down long enough
+                if (st.m_down && System.currentTimeMillis() - st.m_downSince >= m_checkIntervalMs)
+                    st.m_down = false;
+
+            } else if (alive) {
+                if (st.m_down) LOGGER.info("Host " + st.m_host + " is reachable again.");
+                st.m_down = false;
+
+            } else {
+                if (!st.m_down) {
+                    LOGGER.warn("Health check of " + st.m_host + " failed.");
+                    st.m_downSince = System.currentTimeMillis();
+                }
+                st.m_down = true;
+            }
+        }
+    }
+
+
+    private static String hostId(final SessionKey key) {
+        return key.getHost() + ':' + key.getPort();
+    }
+
+
+    private static final class HostStats {
+        private final String m_host;
+        private final int m_port;
+        private boolean m_down;
+        private long m_downSince;
+        /** moving average of the connect latency, 0 if not yet connected */
+        private double m_latencyMs;
+
+        private HostStats(final String host, final int port) {
+            m_host = host;
+            m_port = port;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.ssh;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Keeps track of failed connection attempts per host.
+ *
+ * After {@link #FAILURE_THRESHOLD} consecutive failures the circuit for the
+ * host opens and further connection attempts fail immediately instead of each
+ * node waiting for its own timeouts. After a cool down period a single trial
+ * connection is let through (half open). If it succeeds the circuit closes,
+ * otherwise it opens again with a doubled cool down.
+ *
+ * @author albertgo @ Genentech
+ */
+final class HostCircuitBreaker {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(HostCircuitBreaker.class);
+
+    static final int FAILURE_THRESHOLD = 5;
+    private static final long MIN_OPEN_MS = 30 * 1000L;
+    private static final long MAX_OPEN_MS = 5 * 60 * 1000L;
+
+    private final Map<String, HostState> m_hosts = new HashMap<String, HostState>();
+
+
+    /**
+     * @throws IllegalStateException if the circuit for this host is open.
+     */
+    synchronized void checkAllowed(final String host) {
+        HostState st = m_hosts.get(host);
+        if (st == null || st.m_openUntil == 0) return;
+
+        long now = System.currentTimeMillis();
+        if (now < st.m_openUntil || st.m_trialRunning) {
+            throw new IllegalStateException(String.format(
+                    "Host %s is not reachable (%d failed connection attempts), "
+                  + "will retry in %d sec.",
+                    host, st.m_failures, Math.max(1, (st.m_openUntil - now) / 1000)));
+        }
+        // half open: let this one through
+        st.m_trialRunning = true;
+    }
+
+    synchronized void recordSuccess(final String host) {
+        HostState st = m_hosts.remove(host);
+        if (st != null && st.m_openUntil != 0)
+            LOGGER.info("Connection to " + host + " recovered.");
+    }
+
+    synchronized void recordFailure(final String host) {
+        HostState st = m_hosts.get(host);
+        if (st == null) {
+            st = new HostState();
+            m_hosts.put(host, st);
+        }
+        st.m_failures++;
+
+        if (st.m_trialRunning || st.m_failures >= FAILURE_THRESHOLD) {
+            st.m_openMs = st.m_openMs == 0 ? MIN_OPEN_MS : Math.min(MAX_OPEN_MS, st.m_openMs * 2);
+            st.m_openUntil = System.currentTimeMillis() + st.m_openMs;
+            st.m_trialRunning = false;
+            LOGGER.warn(String.format("Connection to %s failed %d times, failing fast for %d sec.",
+                        host, st.m_failures, st.m_openMs / 1000));
+        }
+    }
+
+
+    private static final class HostState {
+        private int m_failures;
+        private long m_openUntil;
+        private long m_openMs;
+        private boolean m_trialRunning;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.ssh;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Runs a {@link Producer} in a background thread and makes its output
+ * available as {@link InputStream}, e.g. to be passed to
+ * ChannelExec.setInputStream().
+ *
+ * The pipe between producer and consumer is bounded so that the producer
+ * blocks if the remote command does not read fast enough and no temporary
+ * file is needed.
+ *
+ * A failed write to the pipe after the consumer closed its end or its reading
+ * thread ended, e.g. because the remote command exited early, is like SIGPIPE
+ * in a shell pipe only logged. All other exceptions, including IOExceptions
+ * of the producer itself, are rethrown by {@link #checkFailed()} and
+ * {@link #join()}.
+ *
+ * @author albertgo @ Genentech
+ */
+public class PipedInputProducer {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(PipedInputProducer.class);
+
+    private static final int PIPE_SIZE = 1 << 20;
+
+    /** writes the data to be streamed */
+    public interface Producer {
+        /** write all data to out, out is closed by the caller. */
+        void write(OutputStream out) throws Exception;
+    }
+
+    private final String m_name;
+    private final Producer m_producer;
+    private Thread m_thread;
+    private volatile Exception m_failure;
+    /** the consumer closed the stream returned by {@link #start()} */
+    private volatile boolean m_readerClosed = false;
+    /** a write to the pipe failed because the consumer is gone */
+    private volatile boolean m_sinkBroken = false;
+
+
+    public PipedInputProducer(final String name, final Producer producer) {
+        m_name = name;
+        m_producer = producer;
+    }
+
+
+    /**
+     * Start the producer thread.
+     *
+     * @return stream from which the produced data can be read.
+     */
+    public InputStream start() throws IOException {
+        PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        final PipedOutputStream pipe = new PipedOutputStream(in);
+        final OutputStream out = new FilterOutputStream(pipe) {
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                try {
+                    pipe.write(b, off, len);
+                } catch (IOException e) {
+                    m_sinkBroken = true;
+                    throw e;
+                }
+            }
+
+            @Override
+            public void write(final int b) throws IOException {
+                try {
+                    pipe.write(b);
+                } catch (IOException e) {
+                    m_sinkBroken = true;
+                    throw e;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                try {
+                    pipe.flush();
+                } catch (IOException e) {
+                    m_sinkBroken = true;
+                    throw e;
+                }
+            }
+        };
+
+        m_thread = new Thread(m_name) {
+            @Override
+            public void run() {
+                try {
+                    m_producer.write(out);
+                } catch (Exception e) {
+                    if (m_sinkBroken) {
+                        LOGGER.debug(m_name + " stopped, stream " 
+                                + (m_readerClosed ? "closed" : "abandoned") + " by reader: " 
+                                + e.getMessage());
+                    } else {
+                        m_failure = e;
+                        LOGGER.debug(m_name + " failed: " + e.getMessage());
+                    }
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        // reader already gone
+                    }
+                }
+            }
+        };
+        m_thread.setDaemon(true);
+        m_thread.start();
+        return new FilterInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                m_readerClosed = true;
+                super.close();
+            }
+        };
+    }
+
+
+    /**
+     * @throws Exception the exception thrown by the producer, if it failed.
+     */
+    public void checkFailed() throws Exception {
+        Exception e = m_failure;
+        if (e != null) throw e;
+    }
+
+
+    /**
+     * Wait for the producer to finish and rethrow its exception if it failed.
+     *
+     * The stream returned by {@link #start()} must be closed before calling
+     * this if the consumer did not read all data.
+     */
+    public void join() throws Exception {
+        if (m_thread != null) m_thread.join();
+        checkFailed();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+/**
+ * Runs a {@link Consumer} in a background thread which reads everything
+ * written to the {@link OutputStream} returned by {@link #start()}, e.g. the
+ * stdout of a remote command passed to ChannelExec.setOutputStream().
+ *
+ * The consumer runs in its own thread so that a slow consumer does not
+ * block the ssh session thread for longer than it takes to fill the pipe.
+ * If the consumer fails the pipe is closed and the writer gets an
+ * IOException.
+ *
+ * @param <T> type of the result of the consumer
+ * @author albertgo @ Genentech
+ */
+public class PipedOutputConsumer<T> {
+
+    private static final int PIPE_SIZE = 4 << 20;
+
+    /** reads the data written to the pipe */
+    public interface Consumer<T> {
+        /** read in until it is exhausted and return the result. */
+        T read(InputStream in) throws Exception;
+    }
+
+    private final String m_name;
+    private final Consumer<T> m_consumer;
+    private Thread m_thread;
+    private volatile T m_result;
+    private volatile Exception m_failure;
+
+
+    public PipedOutputConsumer(final String name, final Consumer<T> consumer) {
+        m_name = name;
+        m_consumer = consumer;
+    }
+
+
+    /**
+     * Start the consumer thread.
+     *
+     * @return stream to which the data must be written. It must be closed
+     *         when all data has been written.
+     */
+    public OutputStream start() throws IOException {
+        final PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream out = new PipedOutputStream(in);
+
+        m_thread = new Thread(m_name) {
+            @Override
+            public void run() {
+                try {
+                    m_result = m_consumer.read(in);
+                } catch (Exception e) {
+                    m_failure = e;
+                } finally {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        // nothing to do
+                    }
+                }
+            }
+        };
+        m_thread.setDaemon(true);
+        m_thread.start();
+        return out;
+    }
+
+
+    /**
+     * @throws Exception the exception thrown by the consumer, if it failed.
+     */
+    public void checkFailed() throws Exception {
+        Exception e = m_failure;
+        if (e != null) throw e;
+    }
+
+
+    /**
+     * Wait for the consumer to read all data and return its result.
+     *
+     * The stream returned by {@link #start()} must have been closed.
+     */
+    public T join() throws Exception {
+        if (m_thread != null) m_thread.join();
+        checkFailed();
+        return m_result;
+    }
+}
@@ -24,13 +24,12 @@ package com.genentech.knime.ssh;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.ArrayList;
 
 import org.knime.chem.base.node.io.sdfwriter2.DefaultSDFWriter;
 import org.knime.chem.base.node.io.sdfwriter2.SDFWriterSettings;
-//import org.knime.chem.base.node.io.sdf.DefaultSDFWriter;
-//import org.knime.chem.base.node.io.sdf.SDFWriterSettings;
 import org.knime.chem.base.node.io.sdf.DefaultSDFReader;
 import org.knime.chem.base.node.io.sdf.SDFReaderSettings;
 import org.knime.core.data.DataTableSpec;
@@ -38,9 +37,15 @@ import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.util.filter.NameFilterConfiguration.EnforceOption;
 import org.knime.core.node.util.filter.column.DataColumnSpecFilterConfiguration;
+
+import com.genentech.knime.Settings;
+import com.genentech.knime.commandLine.SDFTableBuilder;
+import com.genentech.knime.commandLine.SDFTableWriter;
 /**
  * This {@link NodeModel} assumes the input port
  * has structure and property data; Writes it as an sdf file into
@@ -48,8 +53,13 @@ import org.knime.core.node.util.filter.column.DataColumnSpecFilterConfiguration;
  * the remote program and tries to interpret it as SDF file to convert it
  * back into a knime table.
  * 
- * The parsing of the SDF files is delegated to implementations in the KNIME
- * classes in org.knime.chem.base.node.io.sdf and org.knime.chem.base.node.io.sdfwriter2.
+ * The parsing and writing of the SDF files is delegated to implementations
+ * in the KNIME classes in org.knime.chem.base.node.io.sdf and 
+ * org.knime.chem.base.node.io.sdfwriter2. If the input is streamed to the
+ * remote program it is written by {@link SDFTableWriter}. If the node is
+ * configured to build the table while the output arrives, see 
+ * {@link SDFSSHToolSettings#isStreamOutput()}, it is parsed by 
+ * {@link SDFTableBuilder}.
  * 
  * @author albertgo @ Genentech
  */
@@ -75,6 +85,22 @@ public class SDFSSHNodeModel extends AbstractSSHNodeModel {
    }
 
 
+   @Override
+   public PipedOutputConsumer<BufferedDataTable> createOutputConsumer(ExecutionContext exec) {
+      if (!((SDFSSHToolSettings)getConfigSettings()).isStreamOutput()) return null;
+      return SDFTableBuilder.createConsumer(exec, false);
+   }
+
+   @Override
+   protected DataTableSpec[] configure(final DataTableSpec[] inSpecs)
+         throws InvalidSettingsException {
+      DataTableSpec[] outSpecs = super.configure(inSpecs);
+      if (((SDFSSHToolSettings)getConfigSettings()).isStreamOutput() && !Settings.SSHStreamOutput)
+         setWarningMessage("Building the table while the output arrives is disabled by "
+                  + "streamOutput in commandLinePrograms.xml, the KNIME SDF reader is used");
+      return outSpecs;
+   }
+
    @Override
    public BufferedDataTable parseOutput(ExecutionContext exec, File tmpOutFile) 
          throws IOException, CanceledExecutionException {
@@ -91,6 +117,8 @@ public class SDFSSHNodeModel extends AbstractSSHNodeModel {
       try {
          result = sdfReader.execute(exec)[0]; // ignore error sdf records
          
+      } catch (CanceledExecutionException e) {
+         throw e;
       } catch (Exception e) {
          throw new IOException("Error reading sdf: " +e.getMessage(), e);
       }
@@ -131,4 +159,23 @@ public class SDFSSHNodeModel extends AbstractSSHNodeModel {
          throw new IOException("In SDFWriter: " + e.getMessage(),e);
       }
    }
-}
+
+   /**
+    * Only structures which {@link SDFTableWriter} writes like the KNIME SDF 
+    * writer are streamed.
+    */
+   @Override
+   public boolean canStreamInput(DataTableSpec inSpec) {
+      String structCol = ((SDFSSHToolSettings)getConfigSettings()).getStructColumn();
+      return SDFTableWriter.isSupported(inSpec, structCol);
+   }
+
+   @Override
+   public void writeInput(ExecutionMonitor exec, BufferedDataTable inData, 
+                          OutputStream out) throws IOException, CanceledExecutionException {
+      SDFSSHToolSettings confSettings = (SDFSSHToolSettings)getConfigSettings();
+      String structCol = confSettings.getStructColumn();
+      
+      new SDFTableWriter(inData.getDataTableSpec(), structCol).write(inData, out, exec);
+   }
+}
\ No newline at end of file
@@ -44,8 +44,11 @@ public class SDFSSHToolSettings extends TABSSHToolSettings{
 
    public static final String DEFAULT_MYSUB_OPTS = Settings.getMysubOptions();
    private static final String CFG_STRUCT_COL = "structColumn";
+   private static final String CFG_STREAM_OUTPUT = "streamOutput";
 
    private String m_StructColumn;
+   /** build the output table while it arrives, see {@link Settings#SSHStreamOutput} */
+   private boolean m_streamOutput;
 
    /**
     * Default constructor with default settings, possibly invalid settings.
@@ -74,6 +77,8 @@ public class SDFSSHToolSettings extends TABSSHToolSettings{
       throws InvalidSettingsException {
       super.loadSettings(settings);
       m_StructColumn = settings.getString(CFG_STRUCT_COL);
+      // older nodes read their output with the KNIME SDF reader
+      m_streamOutput = settings.getBoolean(CFG_STREAM_OUTPUT, false);
    }
 
    public void validateSettings(final NodeSettingsRO settings)
@@ -85,6 +90,7 @@ public class SDFSSHToolSettings extends TABSSHToolSettings{
    public void save(final NodeSettingsWO settings) {
       super.save(settings);
       settings.addString(CFG_STRUCT_COL, m_StructColumn);
+      settings.addBoolean(CFG_STREAM_OUTPUT, m_streamOutput);
    }
 
    public void setStructColumn(final String structCol) {
@@ -94,4 +100,17 @@ public class SDFSSHToolSettings extends TABSSHToolSettings{
    public String getStructColumn() {
       return m_StructColumn;
    }
+
+   public void setStreamOutput(final boolean streamOutput) {
+      m_streamOutput = streamOutput;
+   }
+
+   /**
+    * @return true if the output table is built while the output arrives, it
+    *         then has a single structure column "Molecule" and its own column
+    *         types instead of the layout of the KNIME SDF reader.
+    */
+   public boolean isStreamOutput() {
+      return m_streamOutput;
+   }
 }
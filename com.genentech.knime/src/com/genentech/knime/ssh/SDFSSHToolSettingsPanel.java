@@ -27,6 +27,7 @@
 package com.genentech.knime.ssh;
 
 import javax.swing.Box;
+import javax.swing.JCheckBox;
 import javax.swing.border.Border;
 
 import org.knime.chem.types.CtabValue;
@@ -55,6 +56,9 @@ public class SDFSSHToolSettingsPanel extends TABSSHToolSettingsPanel {
       new ColumnSelectionComboxBox((Border)null, SdfValue.class,
               MolValue.class, CtabValue.class);
 
+   private final JCheckBox m_streamOutput = new JCheckBox(
+           "Build table while the output arrives (structure column \"Molecule\", own column types)");
+
 
     /**
      * Creates a new tab.
@@ -63,6 +67,7 @@ public class SDFSSHToolSettingsPanel extends TABSSHToolSettingsPanel {
     	super(parent);
         add(Box.createVerticalStrut(5));
         add(m_structCol);
+        add(m_streamOutput);
         add(Box.createHorizontalGlue());
     }
 
@@ -79,6 +84,7 @@ public class SDFSSHToolSettingsPanel extends TABSSHToolSettingsPanel {
        if (specs != null) {
             m_structCol.update(specs, ((SDFSSHToolSettings)settings).getStructColumn());
        }
+       m_streamOutput.setSelected(((SDFSSHToolSettings)settings).isStreamOutput());
     }
 
     /**
@@ -93,6 +99,7 @@ public class SDFSSHToolSettingsPanel extends TABSSHToolSettingsPanel {
        
        ((SDFSSHToolSettings)settings)
           .setStructColumn(m_structCol.getSelectedColumn());
+       ((SDFSSHToolSettings)settings).setStreamOutput(m_streamOutput.isSelected());
     }
 
 }
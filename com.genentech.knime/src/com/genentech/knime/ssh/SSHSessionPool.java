@@ -0,0 +1,724 @@
+/*
+    The chemalot-knime package provides a framework to execute commandline
+    programs that read and wrie SDF files on a remote host from the KNIME
+    graphical pipelining platform.
+    Copyright (C) 2016 Genentech Inc.
+
+    This file is part of chemalot-knime.
+
+    chemalot-knime is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    chemalot-knime is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with chemalot-knime.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.genentech.knime.ssh;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jsch.core.IJSchLocation;
+import org.eclipse.jsch.core.IJSchService;
+import org.knime.core.node.NodeLogger;
+
+import com.genentech.knime.GNENodeActivator;
+import com.genentech.knime.Settings;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.UserInfo;
+
+/**
+ * Pool of connected jcraft {@link Session}s shared by all GNE nodes.
+ *
+ * Opening a session costs a full TCP connect, key exchange and authentication.
+ * Sessions are therefore leased to nodes and returned to the pool when the node
+ * is done with them. Sessions are interchangeable if they have the same
+ * {@link SessionKey} (user, host, port, credentials and compression).
+ *
+ * A session is leased to up to {@link Settings#SSHMaxChannelsPerSession}
+ * nodes at the same time, each holder opens its own channels on it. A new
+ * session is only opened when all sessions for the key are saturated. If
+ * the server refuses a channel, see {@link #channelRefused(Session)}, the
+ * limit for the key is lowered to what the server accepts. With
+ * {@link Settings#SSHStreamOutput} each session carries a single channel: 
+ * stdout is written to the table being built by the session's reading 
+ * thread, a slow node would stall all other channels of its session.
+ *
+ * Idle sessions are disconnected after {@link Settings#SSHSessionIdleTTL} seconds.
+ *
+ * New sessions are connected without any global lock so that connections to
+ * different hosts do not wait for each other. Failed connection attempts are
+ * retried with jittered exponential backoff and counted per host by a
+ * {@link HostCircuitBreaker} so that an unreachable host fails fast.
+ *
+ * Sessions to a host pool, a list of interchangeable hosts, are leased with
+ * {@link #lease(List, UserInfo, int, int)}. The {@link HostBalancer} decides
+ * which host gets a new session, a host refusing the connection is skipped.
+ *
+ * @author albertgo @ Genentech
+ */
+public final class SSHSessionPool {
+
+    private static final NodeLogger LOGGER = NodeLogger.getLogger(SSHSessionPool.class);
+
+    /** idle sessions older than this are probed with a keep alive before being leased */
+    private static final long VALIDATE_AFTER_MS = 30 * 1000L;
+
+    /** first backoff interval between connection attempts, doubled with each retry */
+    private static final long BACKOFF_BASE_MS = 250L;
+    private static final long BACKOFF_MAX_MS = 8 * 1000L;
+
+    /** unanswered keep alive messages after which a session is considered dead */
+    private static final int KEEPALIVE_COUNT_MAX = 3;
+
+    /** zlib level of compressed sessions, sdf compresses well even with fast settings */
+    private static final int ZLIB_LEVEL = 3;
+
+    private static SSHSessionPool DEFAULT;
+
+    private final Map<SessionKey, Deque<PooledSession>> m_idle
+                = new HashMap<SessionKey, Deque<PooledSession>>();
+    private final Map<Session, PooledSession> m_leased
+                = new IdentityHashMap<Session, PooledSession>();
+    /** channel limits lowered after the server refused a channel */
+    private final Map<SessionKey, Integer> m_channelLimits = new HashMap<SessionKey, Integer>();
+    private final long m_idleTTLMs;
+    private final HostCircuitBreaker m_breaker = new HostCircuitBreaker();
+    private final HostBalancer m_balancer = new HostBalancer(
+            "latency".equalsIgnoreCase(Settings.SSHHostSelection),
+            Settings.SSHHealthCheckInterval * 1000L,
+            new HostBalancer.Probe() {
+                @Override
+                public Boolean check(final String host, final int port) {
+                    return keepAlive(host, port);
+                }
+            });
+    private final ScheduledExecutorService m_reaper;
+    private boolean m_shutdown = false;
+
+
+    private SSHSessionPool(final long idleTTLMs) {
+        m_idleTTLMs = idleTTLMs;
+        m_reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(r, "GNE-SSHSessionPool-Reaper");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        long period = Math.max(5000L, idleTTLMs / 2);
+        m_reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdle();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * @return the pool shared by all nodes in this KNIME instance.
+     */
+    public static synchronized SSHSessionPool getDefault() {
+        if (DEFAULT == null) {
+            DEFAULT = new SSHSessionPool(Settings.SSHSessionIdleTTL * 1000L);
+        }
+        return DEFAULT;
+    }
+
+    /**
+     * Disconnect all sessions and stop the reaper thread.
+     * Called when the plug-in is stopped.
+     */
+    public static synchronized void shutdownDefault() {
+        if (DEFAULT != null) {
+            DEFAULT.shutdown();
+            DEFAULT = null;
+        }
+    }
+
+
+    /**
+     * Create key for the given connection parameters.
+     *
+     * @param encPassword encrypted password as stored in the node settings, may be null.
+     * @param encPassphrase encrypted key passphrase as stored in the node settings, may be null.
+     */
+    public static SessionKey createKey(final String user, final String host,
+            final int port, final String encPassword, final String encPassphrase) {
+        return createKey(user, host, port, encPassword, encPassphrase, false);
+    }
+
+
+    /**
+     * Create key for the given connection parameters.
+     *
+     * @param compress if true the session uses zlib compression.
+     */
+    public static SessionKey createKey(final String user, final String host,
+            final int port, final String encPassword, final String encPassphrase,
+            final boolean compress) {
+        String auth = (encPassword == null ? "" : encPassword) + '\u0000'
+                    + (encPassphrase == null ? "" : encPassphrase);
+        return new SessionKey(user, host, port, digest(auth), compress);
+    }
+
+
+    /**
+     * @return hex encoded SHA-256 of the credentials, a hash code collision 
+     *         would hand out a session authenticated with other credentials.
+     */
+    private static String digest(final String auth) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : md.digest(auth.getBytes(StandardCharsets.UTF_8)))
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+
+    /**
+     * Lease a connected session. Shares a leased session for the same key
+     * which has free channels or reuses an idle one if available, otherwise
+     * connects a new session.
+     *
+     * The session must be given back with {@link #release(Session)} or
+     * {@link #invalidate(Session)}. It must not be disconnected by the caller.
+     */
+    public Session lease(final SessionKey key, final UserInfo userInfo,
+            final int timeoutMs) throws Exception {
+        return lease(key, userInfo, timeoutMs, 1);
+    }
+
+
+    /**
+     * Same as {@link #lease(SessionKey, UserInfo, int)} but a new connection
+     * is attempted up to maxAttempts times with jittered exponential backoff.
+     *
+     * @throws IllegalStateException if the host has failed repeatedly and is
+     *         currently not tried at all.
+     */
+    public Session lease(final SessionKey key, final UserInfo userInfo,
+            final int timeoutMs, final int maxAttempts) throws Exception {
+        Session session = leaseShared(key);
+        if (session == null) session = leaseIdle(key);
+        if (session != null) return session;
+
+        session = connectWithRetry(key, userInfo, timeoutMs, maxAttempts);
+        return addLeased(key, session);
+    }
+
+
+    /**
+     * Lease a session to any of the hosts of a host pool.
+     *
+     * A leased session with free channels or an idle session to one of the 
+     * hosts is reused if available. Otherwise
+     * the hosts are tried in the order given by the {@link HostBalancer}, a
+     * host refusing the connection or with an open circuit is skipped. If all
+     * hosts failed the round is repeated after a backoff, up to maxAttempts
+     * rounds.
+     *
+     * @param keys one key per host, all with the same user and credentials.
+     */
+    public Session lease(final List<SessionKey> keys, final UserInfo userInfo,
+            final int timeoutMs, final int maxAttempts) throws Exception {
+        if (keys.isEmpty()) throw new IllegalArgumentException("No host given.");
+        if (keys.size() == 1) return lease(keys.get(0), userInfo, timeoutMs, maxAttempts);
+
+        List<SessionKey> ordered = m_balancer.order(keys, countLeased());
+        for (SessionKey key : ordered) {
+            Session session = leaseShared(key);
+            if (session != null) return session;
+        }
+        for (SessionKey key : ordered) {
+            Session session = leaseIdle(key);
+            if (session != null) return session;
+        }
+
+        for (int round = 1; ; round++) {
+            Exception lastFailure = null;
+            for (SessionKey key : ordered) {
+                Session session;
+                try {
+                    m_breaker.checkAllowed(key.getHost() + ':' + key.getPort());
+                    session = connectOnce(key, userInfo, timeoutMs);
+                } catch (JSchException e) {
+                    if (isAuthFailure(e)) throw e;
+                    LOGGER.warn(String.format("Connection to %s failed (%s), trying next host",
+                                              key, e.getMessage()));
+                    lastFailure = e;
+                    continue;
+                } catch (IllegalStateException e) {
+                    // circuit is open
+                    lastFailure = e;
+                    continue;
+                }
+                return addLeased(key, session);
+            }
+            if (round >= maxAttempts) throw lastFailure;
+
+            long wait = backoffMs(round);
+            LOGGER.warn(String.format("No host of %s accepted a connection, retry %d in %d ms",
+                                      ordered, round, wait));
+            Thread.sleep(wait);
+            ordered = m_balancer.order(keys, countLeased());
+        }
+    }
+
+
+    /**
+     * @return the least used leased session for key with a free channel, null
+     *         if all are saturated.
+     */
+    private synchronized Session leaseShared(final SessionKey key) {
+        if (m_shutdown) return null;
+        int limit = getChannelLimit(key);
+        PooledSession best = null;
+        for (PooledSession ps : m_leased.values()) {
+            if (ps.m_key.equals(key) && ps.m_leases < limit && ps.m_session.isConnected()
+                    && (best == null || ps.m_leases < best.m_leases))
+                best = ps;
+        }
+        if (best == null) return null;
+
+        best.m_leases++;
+        LOGGER.debug("Sharing ssh session to " + key + " (" + best.m_leases + " holders)");
+        return best.m_session;
+    }
+
+
+    private int getChannelLimit(final SessionKey key) {
+        if (Settings.SSHStreamOutput) return 1;
+        Integer limit = m_channelLimits.get(key);
+        return limit != null ? limit : Math.max(1, Settings.SSHMaxChannelsPerSession);
+    }
+
+
+    /**
+     * @return a live idle session for key which is now leased, null if there is none.
+     */
+    private Session leaseIdle(final SessionKey key) {
+        PooledSession ps;
+        while ((ps = pollIdle(key)) != null) {
+            if (isAlive(ps)) {
+                synchronized (this) {
+                    ps.m_leases = 1;
+                    m_leased.put(ps.m_session, ps);
+                }
+                LOGGER.debug("Reusing ssh session to " + key);
+                return ps.m_session;
+            }
+            LOGGER.debug("Discarding dead ssh session to " + key);
+            disconnect(ps.m_session);
+        }
+        return null;
+    }
+
+
+    private Session addLeased(final SessionKey key, final Session session) {
+        synchronized (this) {
+            if (m_shutdown) {
+                disconnect(session);
+                throw new IllegalStateException("SSH session pool was shut down.");
+            }
+            m_leased.put(session, new PooledSession(key, session));
+        }
+        return session;
+    }
+
+
+    /**
+     * Return a leased session to the pool so that it can be reused by other nodes.
+     * The session becomes idle when the last holder released it.
+     */
+    public void release(final Session session) {
+        if (session == null) return;
+
+        PooledSession ps;
+        synchronized (this) {
+            ps = m_leased.get(session);
+            if (ps != null && --ps.m_leases > 0) return;
+
+            m_leased.remove(session);
+            if (ps != null && !m_shutdown && session.isConnected()) {
+                ps.m_lastUsed = System.currentTimeMillis();
+                Deque<PooledSession> idle = m_idle.get(ps.m_key);
+                if (idle == null) {
+                    idle = new ArrayDeque<PooledSession>();
+                    m_idle.put(ps.m_key, idle);
+                }
+                idle.push(ps);
+                return;
+            }
+        }
+        disconnect(session);
+    }
+
+
+    /**
+     * The server refused to open a channel on session, e.g. because sshd 
+     * MaxSessions is lower than {@link Settings#SSHMaxChannelsPerSession}. 
+     * Sessions for its key are shared by fewer holders from now on. The 
+     * session is released, the caller should lease a new one.
+     */
+    public void channelRefused(final Session session) {
+        synchronized (this) {
+            PooledSession ps = m_leased.get(session);
+            if (ps != null) {
+                int limit = Math.max(1, ps.m_leases - 1);
+                if (limit < getChannelLimit(ps.m_key)) {
+                    LOGGER.warn(String.format("%s refused channel %d of a session, "
+                            + "limiting sessions to %d channels", ps.m_key, ps.m_leases, limit));
+                    m_channelLimits.put(ps.m_key, limit);
+                }
+            }
+        }
+        release(session);
+    }
+
+
+    /**
+     * Remove a leased session from the pool and disconnect it.
+     * Use this if the session is suspected to be broken. Other holders of
+     * the session will see their channels fail.
+     */
+    public void invalidate(final Session session) {
+        if (session == null) return;
+        synchronized (this) {
+            m_leased.remove(session);
+        }
+        disconnect(session);
+    }
+
+
+    /** @return number of leases, i.e. channels in use, per host:port */
+    private synchronized Map<String, Integer> countLeased() {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (PooledSession ps : m_leased.values()) {
+            String host = ps.m_key.getHost() + ':' + ps.m_key.getPort();
+            Integer n = counts.get(host);
+            counts.put(host, (n == null ? 0 : n) + ps.m_leases);
+        }
+        return counts;
+    }
+
+
+    private synchronized PooledSession pollIdle(final SessionKey key) {
+        Deque<PooledSession> idle = m_idle.get(key);
+        if (idle == null) return null;
+
+        PooledSession ps = idle.poll();
+        if (idle.isEmpty()) m_idle.remove(key);
+        return ps;
+    }
+
+
+    /**
+     * Sends a keep alive on a session connected to host:port, preferably an
+     * idle one. The session stays where it is, jsch serializes the message
+     * with the channel traffic of a leased session.
+     *
+     * @return null if there is no connected session to the host.
+     */
+    private Boolean keepAlive(final String host, final int port) {
+        Session session = null;
+        synchronized (this) {
+            for (Deque<PooledSession> idle : m_idle.values()) {
+                for (PooledSession ps : idle) {
+                    if (isSessionTo(ps, host, port)) session = ps.m_session;
+                }
+            }
+            if (session == null) {
+                for (PooledSession ps : m_leased.values()) {
+                    if (isSessionTo(ps, host, port)) session = ps.m_session;
+                }
+            }
+        }
+        if (session == null) return null;
+
+        try {
+            session.sendKeepAliveMsg();
+            return Boolean.TRUE;
+        } catch (Exception e) {
+            LOGGER.debug("Keep alive to " + host + ':' + port + " failed: " + e.getMessage());
+            return Boolean.FALSE;
+        }
+    }
+
+
+    private static boolean isSessionTo(final PooledSession ps, final String host, final int port) {
+        return ps.m_key.getHost().equals(host) && ps.m_key.getPort() == port
+               && ps.m_session.isConnected();
+    }
+
+
+    private static boolean isAlive(final PooledSession ps) {
+        Session s = ps.m_session;
+        if (!s.isConnected()) return false;
+
+        if (System.currentTimeMillis() - ps.m_lastUsed > VALIDATE_AFTER_MS) {
+            try {
+                s.sendKeepAliveMsg();
+            } catch (Exception e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private Session connectWithRetry(final SessionKey key, final UserInfo userInfo,
+            final int timeoutMs, final int maxAttempts) throws Exception {
+        String host = key.getHost() + ':' + key.getPort();
+        for (int attempt = 1; ; attempt++) {
+            m_breaker.checkAllowed(host);
+            try {
+                return connectOnce(key, userInfo, timeoutMs);
+
+            } catch (JSchException e) {
+                // wrong credentials will not get better by retrying
+                if (isAuthFailure(e) || attempt >= maxAttempts) throw e;
+
+                long wait = backoffMs(attempt);
+                LOGGER.warn(String.format("Connection to %s failed (%s), retry %d in %d ms",
+                                          key, e.getMessage(), attempt, wait));
+                Thread.sleep(wait);
+            }
+        }
+    }
+
+
+    /**
+     * Single connection attempt whose outcome is recorded by the circuit
+     * breaker and the balancer. Any outcome but a connected session or an
+     * authentication failure counts as failure, otherwise a half open
+     * circuit would wait for its trial forever.
+     */
+    private Session connectOnce(final SessionKey key, final UserInfo userInfo,
+            final int timeoutMs) throws Exception {
+        String host = key.getHost() + ':' + key.getPort();
+        boolean recorded = false;
+        long start = System.nanoTime();
+        try {
+            Session session = connect(key, userInfo, timeoutMs);
+            m_breaker.recordSuccess(host);
+            m_balancer.recordSuccess(key, (System.nanoTime() - start) / 1e6);
+            recorded = true;
+            return session;
+
+        } catch (JSchException e) {
+            if (isAuthFailure(e)) {
+                m_breaker.recordSuccess(host);
+                recorded = true;
+            }
+            throw e;
+
+        } finally {
+            if (!recorded) {
+                m_breaker.recordFailure(host);
+                m_balancer.recordFailure(key);
+            }
+        }
+    }
+
+
+    /** full jitter: random wait between 0 and the exponentially growing cap */
+    private static long backoffMs(final int attempt) {
+        long cap = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.min(attempt - 1, 16));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+
+    private static boolean isAuthFailure(final JSchException e) {
+        String msg = e.getMessage();
+        return msg != null && (msg.startsWith("Auth fail") || msg.startsWith("Auth cancel"));
+    }
+
+
+    private static Session connect(final SessionKey key, final UserInfo userInfo,
+            final int timeoutMs) throws Exception {
+        IJSchService service = GNENodeActivator.getDefault().getIJSchService();
+        IJSchLocation location = service.getLocation(key.getUser(), key.getHost(), key.getPort());
+
+        Session session = null;
+        try {
+            session = service.createSession(location, userInfo);
+            if (key.isCompressed()) {
+                session.setConfig("compression.s2c", "zlib@openssh.com,zlib,none");
+                session.setConfig("compression.c2s", "zlib@openssh.com,zlib,none");
+                session.setConfig("compression_level", Integer.toString(ZLIB_LEVEL));
+            }
+            if (Settings.SSHKeepAliveInterval > 0) {
+                // jsch closes the session and its channels when the peer stopped answering
+                session.setServerAliveInterval(Settings.SSHKeepAliveInterval * 1000);
+                session.setServerAliveCountMax(KEEPALIVE_COUNT_MAX);
+            }
+            session.connect(timeoutMs);
+            LOGGER.debug("Opened new ssh session to " + key);
+            return session;
+
+        } catch (Exception e) {
+            disconnect(session);
+            throw e;
+        }
+    }
+
+
+    /** disconnect idle sessions which have not been used for longer than the TTL */
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - m_idleTTLMs;
+        List<Session> evicted = new ArrayList<Session>();
+        synchronized (this) {
+            Iterator<Deque<PooledSession>> qIt = m_idle.values().iterator();
+            while (qIt.hasNext()) {
+                Deque<PooledSession> idle = qIt.next();
+                Iterator<PooledSession> it = idle.iterator();
+                while (it.hasNext()) {
+                    PooledSession ps = it.next();
+                    if (ps.m_lastUsed < cutoff || !ps.m_session.isConnected()) {
+                        it.remove();
+                        evicted.add(ps.m_session);
+                    }
+                }
+                if (idle.isEmpty()) qIt.remove();
+            }
+        }
+        for (Session s : evicted)
+            disconnect(s);
+
+        if (evicted.size() > 0)
+            LOGGER.debug("Closed " + evicted.size() + " idle ssh session(s)");
+    }
+
+
+    private void shutdown() {
+        List<Session> all = new ArrayList<Session>();
+        synchronized (this) {
+            m_shutdown = true;
+            for (Deque<PooledSession> idle : m_idle.values())
+                for (PooledSession ps : idle)
+                    all.add(ps.m_session);
+            all.addAll(m_leased.keySet());
+            m_idle.clear();
+            m_leased.clear();
+        }
+        m_reaper.shutdownNow();
+        m_balancer.shutdown();
+
+        for (Session s : all)
+            disconnect(s);
+    }
+
+
+    private static void disconnect(final Session session) {
+        try {
+            if (session != null && session.isConnected())
+                session.disconnect();
+        } catch (Exception e) {
+            LOGGER.error("Problem closing ssh connection: " + e.getMessage());
+        }
+    }
+
+
+
+    /**
+     * Identifies interchangeable sessions.
+     */
+    public static final class SessionKey {
+        private final String m_user;
+        private final String m_host;
+        private final int m_port;
+        private final String m_authId;
+        private final boolean m_compress;
+
+        private SessionKey(final String user, final String host, final int port,
+                final String authId, final boolean compress) {
+            m_user = user;
+            m_host = host;
+            m_port = port;
+            m_authId = authId;
+            m_compress = compress;
+        }
+
+        public String getUser() {
+            return m_user;
+        }
+
+        public String getHost() {
+            return m_host;
+        }
+
+        public int getPort() {
+            return m_port;
+        }
+
+        public boolean isCompressed() {
+            return m_compress;
+        }
+
+        @Override
+        public int hashCode() {
+            return (((m_user.hashCode() * 31 + m_host.hashCode()) * 31 + m_port) * 31
+                   + m_authId.hashCode()) * 2 + (m_compress ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof SessionKey)) return false;
+
+            SessionKey o = (SessionKey) obj;
+            return m_port == o.m_port && m_compress == o.m_compress && m_user.equals(o.m_user)
+                && m_host.equals(o.m_host) && m_authId.equals(o.m_authId);
+        }
+
+        @Override
+        public String toString() {
+            return m_user + '@' + m_host + ':' + m_port;
+        }
+    }
+
+
+    private static final class PooledSession {
+        private final SessionKey m_key;
+        private final Session m_session;
+        private long m_lastUsed;
+        /** number of holders while leased */
+        private int m_leases = 1;
+
+        PooledSession(final SessionKey key, final Session session) {
+            m_key = key;
+            m_session = session;
+            m_lastUsed = System.currentTimeMillis();
+        }
+    }
+}
@@ -32,12 +32,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Vector;
 
-import org.eclipse.jsch.core.IJSchLocation;
-import org.eclipse.jsch.core.IJSchService;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionMonitor;
 
-import com.genentech.knime.GNENodeActivator;
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.ChannelSftp.LsEntry;
 import com.jcraft.jsch.Session;
@@ -64,7 +61,12 @@ public final class SSHUtil {
         // this class has only static methods
     }
 
-    public static synchronized Session getConnectedSession(
+    /**
+     * Lease a connected session from the {@link SSHSessionPool}.
+     *
+     * The session must be given back with {@link #releaseSession(Session)}.
+     */
+    public static Session getConnectedSession(
             final TABSSHToolSettings configSettings) throws Exception {
 
         int port = configSettings.getPortNumber();
@@ -78,21 +80,14 @@ public final class SSHUtil {
         }
         String remoteHost = configSettings.getRemoteHost();
 
-        IJSchService service =
-        	GNENodeActivator.getDefault().getIJSchService();
-        IJSchLocation location = service.getLocation(user, remoteHost, port);
+        SSHSessionPool.SessionKey key = SSHSessionPool.createKey(user, remoteHost, port,
+                configSettings.getEncryptPassword(), configSettings.getEncryptKeyPassphrase());
         UserInfo userInfo = configSettings.createJSchUserInfo();
 
-        Session session = null;
         try {
-            session = service.createSession(location, userInfo);
-            session.connect(configSettings.getTimeoutMilliSec());
-
-            return session;
+            return SSHSessionPool.getDefault().lease(key, userInfo,
+                                            configSettings.getTimeoutMilliSec());
         } catch (Exception e) {
-            if (session != null && session.isConnected()) {
-                session.disconnect();
-            }
             if (e.getMessage() != null && !e.getMessage().isEmpty()) {
                 throw e;
             }
@@ -101,9 +96,19 @@ public final class SSHUtil {
         }
     }
 
+    /**
+     * Return a session obtained from {@link #getConnectedSession(TABSSHToolSettings)}
+     * to the pool.
+     */
+    public static void releaseSession(final Session session) {
+        SSHSessionPool.getDefault().release(session);
+    }
+
     /**
      * Creates a new ftp channel on a passed session. If the session is null, it
-     * creates a new one, according to the settings.
+     * leases one from the pool, according to the settings. In that case
+     * the session must be released with {@link #releaseSession(Session)}
+     * after the channel was disconnected.
      *
      * @param settings settings (only for timeout if a session is passed).
      * @param session a connected ssh session, or null to also create a new
@@ -127,10 +132,8 @@ public final class SSHUtil {
 
         } catch (Exception t) {
             if (session == null) {
-                // if we created a session just for this channel
-                if (s.isConnected()) {
-                    s.disconnect();
-                }
+                // if we leased a session just for this channel
+                releaseSession(s);
             }
             throw t;
         }
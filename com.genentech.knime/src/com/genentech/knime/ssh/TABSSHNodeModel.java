@@ -23,8 +23,10 @@
 package com.genentech.knime.ssh;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import org.knime.base.node.io.csvwriter.CSVWriter;
 import org.knime.base.node.io.csvwriter.FileWriterSettings;
@@ -37,6 +39,7 @@ import org.knime.core.data.DataTableSpec;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.NodeModel;
 /**
  * {@link NodeModel} the writes a knime table to a remote command
@@ -91,24 +94,24 @@ public class TABSSHNodeModel extends AbstractSSHNodeModel {
    }
 
    @Override
-   public void writeTMPInFile(ExecutionContext exec, BufferedDataTable inData, 
-                              File tmpInFile) 
+   public void writeInput(ExecutionMonitor exec, BufferedDataTable inData, 
+                          OutputStream out) 
          throws IOException, CanceledExecutionException {
       CSVWriter csvWriter = null;
       try {
-         exec.setMessage("Writing input table to "
-               + "(local) temp CSV file...");
          FileWriterSettings fws = createFileWriterSettings();
          fws.setColSeparator("\t");
          fws.setReplaceSeparatorInStrings(true);
          fws.setSeparatorReplacement("\\t");
          fws.setQuoteMode(quoteMode.REPLACE);
-         FileWriter inTableWriter = new FileWriter(tmpInFile);
+         Writer inTableWriter = new OutputStreamWriter(out);
          csvWriter = new CSVWriter(inTableWriter, fws);
-         csvWriter.write(inData, exec.createSubProgress(0));
+         csvWriter.write(inData, exec);
       } finally {
          if (csvWriter != null) {
             csvWriter.close();
+         } else {
+            out.close();
          }
       }
    }
@@ -448,7 +448,7 @@ public class TABSSHToolSettingsPanel extends JPanel {
         TABSSHToolSettings s = new TABSSHToolSettings();
         try {
             transferComponentsValuesIntoSettings(s);
-            SSHUtil.getConnectedSession(s);
+            SSHUtil.releaseSession(SSHUtil.getConnectedSession(s));
             JOptionPane.showMessageDialog(this, "Looks good.");
         } catch (InvalidSettingsException ise) {
             JOptionPane.showMessageDialog(this,